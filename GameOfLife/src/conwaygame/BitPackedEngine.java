@@ -0,0 +1,177 @@
+package conwaygame;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Bit-packed LifeEngine for large boards that wrap around at the edges like
+ * GameOfLife's. Each row is stored as longs holding 64 cells each, so a board
+ * takes one bit per cell. A whole word of 64 cells is computed at once by adding
+ * up its eight neighbor words with bitwise full adders.
+ *
+ * Given a ForkJoinPool, each generation is split into bands of rows computed in
+ * parallel. Every band only reads the current generation and only writes its own
+ * rows of the next, so the result is the same as computing it on one thread.
+ */
+public class BitPackedEngine implements LifeEngine {
+
+    private static final int MIN_BAND_WORDS = 1 << 12; // Bands smaller than this aren't split further
+
+    private final int rows, cols;
+    private final int words;      // Number of longs per row
+    private final int lastBit;    // Bit of the last column in the last word of a row
+    private final long lastMask;  // Bits of the last word that are columns
+
+    private long[] cells;         // Row-major, column c of a row is bit c % 64 of word c / 64
+    private long[] nextCells;     // The next generation is written here, then the two are swapped
+    private int totalAliveCells;
+    private final ForkJoinPool pool; // Computes the bands of a generation, or null to use this thread
+
+    /**
+     * Packs the given grid, which is left unchanged.
+     *
+     * @param grid the boolean[][] with the starting generation.
+     */
+    public BitPackedEngine(boolean[][] grid) {
+        this(grid, null);
+    }
+
+    /**
+     * Packs the given grid, which is left unchanged, and computes every generation
+     * in bands of rows on the given pool, for example ForkJoinPool.commonPool().
+     *
+     * @param grid the boolean[][] with the starting generation.
+     * @param pool the ForkJoinPool to compute generations on, or null to compute them
+     *             on the calling thread.
+     */
+    public BitPackedEngine(boolean[][] grid, ForkJoinPool pool) {
+        this.pool = pool;
+        rows = grid.length;
+        cols = grid[0].length;
+        words = (cols + 63) / 64;
+        lastBit = (cols - 1) % 64;
+        lastMask = lastBit == 63 ? -1L : (1L << (lastBit + 1)) - 1;
+        cells = new long[rows * words];
+        nextCells = new long[rows * words];
+
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (grid[i][j]) {
+                    cells[i * words + j / 64] |= 1L << (j % 64);
+                    totalAliveCells++;
+                }
+            }
+        }
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public boolean getCellState(int row, int col) {
+        return (cells[row * words + col / 64] >>> (col % 64) & 1) != 0;
+    }
+
+    public int getTotalAliveCells() {
+        return totalAliveCells;
+    }
+
+    public void nextGeneration(long n) {
+        for (long i = 0; i < n; i++) {
+            totalAliveCells = pool == null ? step(0, rows) : pool.invoke(new Band(0, rows));
+            long[] temp = cells;
+            cells = nextCells;
+            nextCells = temp;
+        }
+    }
+
+    public void toGrid(boolean[][] grid) {
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                grid[i][j] = getCellState(i, j);
+            }
+        }
+    }
+
+    // Computes rows [from, to) of the next generation into nextCells, returning how many are alive
+    private int step(int from, int to) {
+        int alive = 0;
+        for (int i = from; i < to; i++) {
+            int above = ((i - 1) + rows) % rows * words;
+            int row = i * words;
+            int below = (i + 1) % rows * words;
+
+            for (int w = 0; w < words; w++) {
+                // The three cells above, added up: one bit of sum, one of carry
+                long aW = west(above, w), aC = cells[above + w], aE = east(above, w);
+                long aSum = aW ^ aC ^ aE;
+                long aCarry = (aW & aC) | (aE & (aW ^ aC));
+
+                // The three cells below
+                long bW = west(below, w), bC = cells[below + w], bE = east(below, w);
+                long bSum = bW ^ bC ^ bE;
+                long bCarry = (bW & bC) | (bE & (bW ^ bC));
+
+                // The two cells beside
+                long mW = west(row, w), mE = east(row, w);
+                long mSum = mW ^ mE;
+                long mCarry = mW & mE;
+
+                // Ones bit of the count, and a carry into the twos
+                long ones = aSum ^ bSum ^ mSum;
+                long onesCarry = (aSum & bSum) | (mSum & (aSum ^ bSum));
+
+                // Twos bit of the count, and whether the count reaches 4
+                long twos = aCarry ^ bCarry ^ mCarry;
+                long fours = (aCarry & bCarry) | (mCarry & (aCarry ^ bCarry)) | (twos & onesCarry);
+                twos ^= onesCarry;
+
+                // Alive with 2 or 3 neighbors, or dead with exactly 3
+                long next = twos & ~fours & (ones | cells[row + w]);
+                if (w == words - 1) next &= lastMask;
+                nextCells[row + w] = next;
+                alive += Long.bitCount(next);
+            }
+        }
+        return alive;
+    }
+
+    // Computes rows [from, to) like step, splitting them in half while they're big enough
+    private class Band extends RecursiveTask<Integer> {
+        private static final long serialVersionUID = 1L;
+
+        private final int from, to;
+
+        Band(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        protected Integer compute() {
+            if (to - from < 2 || (long) (to - from) * words <= MIN_BAND_WORDS) {
+                return step(from, to);
+            }
+            int middle = (from + to) >>> 1;
+            Band top = new Band(from, middle);
+            top.fork();
+            int bottomAlive = new Band(middle, to).compute();
+            return top.join() + bottomAlive;
+        }
+    }
+
+    // The word of neighbors to the left of word w of a row, wrapping around
+    private long west(int row, int w) {
+        long carry = w > 0 ? cells[row + w - 1] >>> 63 : cells[row + words - 1] >>> lastBit & 1;
+        return cells[row + w] << 1 | carry;
+    }
+
+    // The word of neighbors to the right of word w of a row, wrapping around
+    private long east(int row, int w) {
+        long carry = w < words - 1 ? cells[row + w + 1] << 63 : (cells[row] & 1) << lastBit;
+        return cells[row + w] >>> 1 | carry;
+    }
+}
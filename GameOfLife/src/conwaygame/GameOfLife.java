@@ -20,8 +20,12 @@ public class GameOfLife {
     private static final boolean DEAD = false;
 
     private boolean[][] grid;    // The board has the current generation of cells
+    private boolean[][] nextGrid; // The next generation is written here, then the two are swapped
     private int totalAliveCells; // Total number of alive cells in the grid (board)
 
+    private LifeEngine engine;   // Computes the generations instead when set, see setEngine
+    private boolean gridStale;   // True when the engine is ahead of grid
+
     /**
      * Default Constructor which creates a small 5x5 grid with five alive cells.
      * This variation does not exceed bounds and dies off after four iterations.
@@ -62,11 +66,49 @@ public class GameOfLife {
     }
 
     /**
-     * Returns the grid.
+     * Hands the board over to an engine that computes the generations in its own way,
+     * for example new BitPackedEngine(getGrid()) for large boards. The grid is copied
+     * back from the engine only when a method needs it.
+     * 
+     * @param engine the engine holding the current generation, or null to go back to
+     *               computing generations on the grid.
+     */
+    public void setEngine(LifeEngine engine) {
+        syncGrid();
+        if (engine != null && (engine.getRows() != grid.length || engine.getCols() != grid[0].length)) {
+            throw new IllegalArgumentException("Engine board is not the same size as the grid");
+        }
+        this.engine = engine;
+        if (engine != null) {
+            totalAliveCells = engine.getTotalAliveCells();
+        }
+    }
+
+    /**
+     * Returns the engine computing the generations, or null if the grid is used.
+     * 
+     * @return the current LifeEngine.
+     */
+    public LifeEngine getEngine() {
+        return engine;
+    }
+
+    // Copies the engine's generation into grid, if it is ahead
+    private void syncGrid() {
+        if (gridStale) {
+            engine.toGrid(grid);
+            gridStale = false;
+        }
+    }
+
+    /**
+     * Returns the grid. The array is reused for later generations, so copy it
+     * to keep this one.
      * 
      * @return the boolean[][] representing the current grid.
      */
     public boolean[][] getGrid() {
+        syncGrid();
         return grid;
     }
     
@@ -87,6 +129,9 @@ public class GameOfLife {
      * @return true or false value "ALIVE" or "DEAD" (state of the cell).
      */
     public boolean getCellState(int row, int col) {
+        if (engine != null) {
+            return engine.getCellState(row, col);
+        }
         if (grid[row][col] == true) {
             return true;
         }
@@ -99,6 +144,9 @@ public class GameOfLife {
      * @return true if there is at least one cell alive, otherwise returns false.
      */
     public boolean isAlive() {
+        if (engine != null) {
+            return engine.getTotalAliveCells() > 0;
+        }
         int row = grid.length; 
         int col = grid[0].length; 
         for (int i = 0; i < row; i++) {
@@ -121,6 +169,7 @@ public class GameOfLife {
      * @return the number of alive cells (at most 8) neighboring the given cell.
      */
     public int numOfAliveNeighbors(int row, int col) {
+        syncGrid();
         int aliveBuddy = 0; // Counter
         int rowL = grid.length; // Row length
         int colL = grid[0].length; // Column length
@@ -161,30 +210,37 @@ public class GameOfLife {
      * @return the boolean[][] representing the new grid (a new 2D array).
      */
     public boolean[][] computeNewGrid() {
-        // Create a new temporary grid and copy values from the actual grid
+        syncGrid();
         boolean[][] tempGrid = new boolean[grid.length][grid[0].length];
+        computeNewGrid(tempGrid);
+        return tempGrid;
+    }
 
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[0].length; j++) {
-                tempGrid[i][j] = grid[i][j];
-            }
-        }
+    // Writes the next generation into newGrid, which is the same size as grid, and
+    // returns the number of alive cells in it
+    private int computeNewGrid(boolean[][] newGrid) {
+        int alive = 0;
 
-        // Apply the rules of Conway's Game of Life to update the temporary grid
+        // Apply the rules of Conway's Game of Life to every cell
         for (int i = 0; i < grid.length; i++) {
             for (int j = 0; j < grid[0].length; j++) {
                 int buddies = numOfAliveNeighbors(i, j);
                 if (buddies <= 1) {
-                    tempGrid[i][j] = DEAD;
+                    newGrid[i][j] = DEAD;
                 } else if (buddies == 3) {
-                    tempGrid[i][j] = ALIVE;
+                    newGrid[i][j] = ALIVE;
                 } else if (buddies >= 4) {
-                    tempGrid[i][j] = DEAD;
+                    newGrid[i][j] = DEAD;
+                } else {
+                    newGrid[i][j] = grid[i][j];
+                }
+                if (newGrid[i][j] == ALIVE) {
+                    alive++;
                 }
             }
         }
 
-        return tempGrid;
+        return alive;
     }
 
     /**
@@ -194,13 +250,19 @@ public class GameOfLife {
      * Updates the totalAliveCells instance variable.
      */
     public void nextGeneration() {
-        boolean[][] newGrid = computeNewGrid();
-
-        for (int i = 0; i < grid.length; i++) {
-            for (int j = 0; j < grid[0].length; j++) {
-                grid[i][j] = newGrid[i][j];
-            }
+        if (engine != null) {
+            nextGeneration(1);
+            return;
+        }
+        if (nextGrid == null || nextGrid.length != grid.length || nextGrid[0].length != grid[0].length) {
+            nextGrid = new boolean[grid.length][grid[0].length];
         }
+        totalAliveCells = computeNewGrid(nextGrid);
+
+        // Swap the grids, the old generation is overwritten next time
+        boolean[][] temp = grid;
+        grid = nextGrid;
+        nextGrid = temp;
     }
 
     /**
@@ -209,6 +271,12 @@ public class GameOfLife {
      * @param n the number of iterations that the grid will go through to compute a new grid.
      */
     public void nextGeneration(int n) {
+        if (engine != null) {
+            engine.nextGeneration(n);
+            totalAliveCells = engine.getTotalAliveCells();
+            gridStale = true;
+            return;
+        }
         for (int i = 0; i < n; i++) {
             nextGeneration();
         }
@@ -220,6 +288,7 @@ public class GameOfLife {
      * @return the number of communities in the grid. Communities can be formed from edges.
      */
     public int numOfCommunities() { 
+        syncGrid();
         int row = grid.length;
         int col = grid[0].length;
         int counter = 0;
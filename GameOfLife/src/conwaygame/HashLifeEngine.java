@@ -0,0 +1,445 @@
+package conwaygame;
+
+import java.util.Arrays;
+
+/**
+ * HashLife LifeEngine for boards that don't wrap around: the grid is a window onto
+ * an unbounded plane of dead cells, and patterns can leave it and come back.
+ * The plane is a quadtree whose identical subtrees are stored once, and every
+ * subtree remembers its own future, so a periodic or sparse pattern can be moved
+ * forward billions of generations in a handful of steps.
+ *
+ * Only cells inside the window count towards getTotalAliveCells.
+ *
+ * The table of nodes never holds more than maxNodes: when a jump fills it, the jump
+ * starts over from a table with only the current generation in it, and if even that
+ * is too small, the jump is made in two halves. Only a single generation of a
+ * pattern that needs more than maxNodes nodes by itself goes over.
+ */
+public class HashLifeEngine implements LifeEngine {
+
+    public static final int DEFAULT_MAX_NODES = 1 << 22; // Nodes kept before the cache is collected
+    public static final int MAX_JUMP = 60;               // nextGeneration takes fewer than 2^MAX_JUMP generations
+    private static final int MAX_LEVEL = 62;             // Deepest root, so 1L << level stays positive
+
+    private final int rows, cols;
+    private final int maxNodes;
+
+    // Canonical table of nodes, chained through Node.next
+    private Node[] table = new Node[1 << 16];
+    private int size;
+    private int nextId = 2;            // 0 and 1 are the dead and alive cell
+    private Node[] empty = new Node[64]; // The empty node of every level
+    private int collections;             // Number of times the table has been collected
+    private boolean bounded;             // True while join must stop at maxNodes
+
+    private Node root;
+    private long originRow, originCol; // Position of the root's top left cell on the plane
+    private int totalAliveCells;       // Alive cells inside the window
+
+    private final Node off, on;
+
+    /**
+     * Builds the plane with the given grid as its window, dead everywhere else.
+     * The grid is left unchanged.
+     *
+     * @param grid the boolean[][] with the starting generation.
+     */
+    public HashLifeEngine(boolean[][] grid) {
+        this(grid, DEFAULT_MAX_NODES);
+    }
+
+    /**
+     * @param grid the boolean[][] with the starting generation.
+     * @param maxNodes how many nodes the table may hold; past it, everything the current
+     *                 generation doesn't use is forgotten.
+     */
+    public HashLifeEngine(boolean[][] grid, int maxNodes) {
+        rows = grid.length;
+        cols = grid[0].length;
+        this.maxNodes = maxNodes;
+        off = new Node(0, 0);
+        on = new Node(1, 1);
+        empty[0] = off;
+
+        int level = 1;
+        while ((1L << level) < Math.max(rows, cols)) {
+            level++;
+        }
+        root = build(grid, level, 0, 0);
+        totalAliveCells = (int) windowPopulation(root, originRow, originCol);
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public boolean getCellState(int row, int col) {
+        long r = row - originRow, c = col - originCol;
+        Node node = root;
+        long side = 1L << node.level;
+        if (r < 0 || c < 0 || r >= side || c >= side) {
+            return false;
+        }
+        while (node.level > 0 && node.population > 0) {
+            side >>= 1;
+            boolean south = r >= side, east = c >= side;
+            node = south ? (east ? node.se : node.sw) : (east ? node.ne : node.nw);
+            if (south) r -= side;
+            if (east) c -= side;
+        }
+        return node == on;
+    }
+
+    public int getTotalAliveCells() {
+        return totalAliveCells;
+    }
+
+    /**
+     * Moves the plane forward by n generations, in one jump for every bit of n.
+     *
+     * @param n the number of generations to compute, less than 2^MAX_JUMP.
+     */
+    public void nextGeneration(long n) {
+        if (n < 0 || n >= 1L << MAX_JUMP) {
+            throw new IllegalArgumentException("Number of generations must be between 0 and 2^" + MAX_JUMP);
+        }
+        // Move forward 2^j generations for every bit j of n
+        for (int j = 0; (n >>> j) != 0; j++) {
+            if ((n >>> j & 1) == 1) {
+                jump(j);
+            }
+        }
+        if (size > maxNodes) {
+            collect();
+        }
+        totalAliveCells = (int) windowPopulation(root, originRow, originCol);
+    }
+
+    // Moves forward 2^j generations without letting the table grow past maxNodes
+    private void jump(int j) {
+        Node start = root;
+        long startRow = originRow, startCol = originCol;
+        if (size > maxNodes) {
+            collect();
+        }
+        for (int attempt = 0; attempt < 2; attempt++) {
+            try {
+                advance(j, true);
+                return;
+            } catch (TableFull e) {
+                // Go back to where the jump started, and try once more from a clean table
+                root = start;
+                originRow = startRow;
+                originCol = startCol;
+                collect();
+            }
+        }
+
+        // Even a clean table is too small for this jump, so make it in two halves
+        if (j > 0) {
+            jump(j - 1);
+            jump(j - 1);
+        } else {
+            advance(0, false);
+        }
+    }
+
+    // Moves forward 2^j generations, throwing TableFull if bounded and the table fills up
+    private void advance(int j, boolean bounded) {
+        this.bounded = bounded;
+        try {
+            // Pad until the pattern sits in the middle with room to grow for 2^j generations
+            while (root.level < j + 2 || !padded(root)) {
+                grow();
+            }
+            grow();
+            long half = 1L << (root.level - 2);
+            root = successor(root, j);
+            originRow += half;
+            originCol += half;
+            shrink();
+        } finally {
+            this.bounded = false;
+        }
+    }
+
+    public void toGrid(boolean[][] grid) {
+        for (boolean[] row : grid) {
+            Arrays.fill(row, false);
+        }
+        fill(grid, root, originRow, originCol);
+    }
+
+    // Sets the alive cells of node, whose top left cell is at (top, left), in the grid
+    private void fill(boolean[][] grid, Node node, long top, long left) {
+        long side = 1L << node.level;
+        if (node.population == 0 || top >= rows || left >= cols || top + side <= 0 || left + side <= 0) {
+            return;
+        }
+        if (node.level == 0) {
+            grid[(int) top][(int) left] = true;
+            return;
+        }
+        long half = side >> 1;
+        fill(grid, node.nw, top, left);
+        fill(grid, node.ne, top, left + half);
+        fill(grid, node.sw, top + half, left);
+        fill(grid, node.se, top + half, left + half);
+    }
+
+    // Counts the alive cells of node that are inside the window
+    private long windowPopulation(Node node, long top, long left) {
+        long side = 1L << node.level;
+        if (node.population == 0 || top >= rows || left >= cols || top + side <= 0 || left + side <= 0) {
+            return 0;
+        }
+        if (top >= 0 && left >= 0 && top + side <= rows && left + side <= cols) {
+            return node.population;
+        }
+        long half = side >> 1;
+        return windowPopulation(node.nw, top, left) + windowPopulation(node.ne, top, left + half)
+                + windowPopulation(node.sw, top + half, left) + windowPopulation(node.se, top + half, left + half);
+    }
+
+    // Builds the node of the given level whose top left cell is grid[top][left]
+    private Node build(boolean[][] grid, int level, int top, int left) {
+        if (top >= rows || left >= cols) {
+            return empty(level);
+        }
+        if (level == 0) {
+            return grid[top][left] ? on : off;
+        }
+        int half = 1 << (level - 1);
+        return join(build(grid, level - 1, top, left), build(grid, level - 1, top, left + half),
+                build(grid, level - 1, top + half, left), build(grid, level - 1, top + half, left + half));
+    }
+
+    // True if every alive cell of node is in its middle half
+    private boolean padded(Node node) {
+        return node.level >= 2 && node.nw.se.population + node.ne.sw.population
+                + node.sw.ne.population + node.se.nw.population == node.population;
+    }
+
+    // Puts the root in the middle of an empty node twice its size
+    private void grow() {
+        if (root.level >= MAX_LEVEL) {
+            throw new IllegalStateException("The pattern has spread too far to fit on the plane");
+        }
+        Node e = empty(root.level - 1);
+        root = join(join(e, e, e, root.nw), join(e, e, root.ne, e),
+                join(e, root.sw, e, e), join(root.se, e, e, e));
+        long quarter = 1L << (root.level - 2);
+        originRow -= quarter;
+        originCol -= quarter;
+    }
+
+    // Drops empty borders from the root, so it stays as small as the pattern
+    private void shrink() {
+        while (root.level > 1 && padded(root)) {
+            long quarter = 1L << (root.level - 2);
+            root = join(root.nw.se, root.ne.sw, root.sw.ne, root.se.nw);
+            originRow += quarter;
+            originCol += quarter;
+        }
+    }
+
+    /**
+     * Returns the middle of node, half its size, 2^j generations later.
+     * j is at most node.level - 2.
+     */
+    private Node successor(Node node, int j) {
+        if (node.population == 0) {
+            return node.nw;
+        }
+        if (node.results != null && node.results[j] != null) {
+            return node.results[j];
+        }
+
+        Node result;
+        if (node.level == 2) {
+            result = step4x4(node);
+        } else {
+            // Nine overlapping subnodes, each half the size of node
+            Node n00 = node.nw, n02 = node.ne, n20 = node.sw, n22 = node.se;
+            Node n01 = join(n00.ne, n02.nw, n00.se, n02.sw);
+            Node n10 = join(n00.sw, n00.se, n20.nw, n20.ne);
+            Node n11 = join(n00.se, n02.sw, n20.ne, n22.nw);
+            Node n12 = join(n02.sw, n02.se, n22.nw, n22.ne);
+            Node n21 = join(n20.ne, n22.nw, n20.se, n22.sw);
+
+            int childJ = Math.min(j, node.level - 3);
+            Node c00 = successor(n00, childJ), c01 = successor(n01, childJ), c02 = successor(n02, childJ);
+            Node c10 = successor(n10, childJ), c11 = successor(n11, childJ), c12 = successor(n12, childJ);
+            Node c20 = successor(n20, childJ), c21 = successor(n21, childJ), c22 = successor(n22, childJ);
+
+            if (j < node.level - 2) {
+                // Already far enough: just take the middles
+                result = join(join(c00.se, c01.sw, c10.ne, c11.nw), join(c01.se, c02.sw, c11.ne, c12.nw),
+                        join(c10.se, c11.sw, c20.ne, c21.nw), join(c11.se, c12.sw, c21.ne, c22.nw));
+            } else {
+                // Half way there: step the four overlapping quarters the rest of the way
+                result = join(successor(join(c00, c01, c10, c11), childJ), successor(join(c01, c02, c11, c12), childJ),
+                        successor(join(c10, c11, c20, c21), childJ), successor(join(c11, c12, c21, c22), childJ));
+            }
+        }
+
+        if (node.results == null) {
+            node.results = new Node[node.level - 1];
+        }
+        node.results[j] = result;
+        return result;
+    }
+
+    // The middle 2x2 of a 4x4 node one generation later, using the rules
+    private Node step4x4(Node node) {
+        boolean[][] cells = new boolean[4][4];
+        Node[] quads = {node.nw, node.ne, node.sw, node.se};
+        for (int q = 0; q < 4; q++) {
+            int top = (q / 2) * 2, left = (q % 2) * 2;
+            cells[top][left] = quads[q].nw == on;
+            cells[top][left + 1] = quads[q].ne == on;
+            cells[top + 1][left] = quads[q].sw == on;
+            cells[top + 1][left + 1] = quads[q].se == on;
+        }
+
+        Node[] next = new Node[4];
+        for (int q = 0; q < 4; q++) {
+            int row = 1 + q / 2, col = 1 + q % 2;
+            int buddies = 0;
+            for (int i = row - 1; i <= row + 1; i++) {
+                for (int j = col - 1; j <= col + 1; j++) {
+                    if ((i != row || j != col) && cells[i][j]) {
+                        buddies++;
+                    }
+                }
+            }
+            next[q] = buddies == 3 || (buddies == 2 && cells[row][col]) ? on : off;
+        }
+        return join(next[0], next[1], next[2], next[3]);
+    }
+
+    private Node empty(int level) {
+        if (empty[level] == null) {
+            Node e = empty(level - 1);
+            empty[level] = join(e, e, e, e);
+        }
+        return empty[level];
+    }
+
+    // Returns the one node with these four quadrants, making it if it doesn't exist yet
+    private Node join(Node nw, Node ne, Node sw, Node se) {
+        int hash = hash(nw, ne, sw, se);
+        int index = hash & (table.length - 1);
+        for (Node node = table[index]; node != null; node = node.next) {
+            if (node.nw == nw && node.ne == ne && node.sw == sw && node.se == se) {
+                return node;
+            }
+        }
+        if (bounded && size >= maxNodes) {
+            throw TABLE_FULL;
+        }
+        Node node = new Node(nw, ne, sw, se, nextId++);
+        insert(node, hash);
+        return node;
+    }
+
+    private void insert(Node node, int hash) {
+        if (size >= table.length * 3 / 4) {
+            Node[] old = table;
+            table = new Node[old.length * 2];
+            for (Node bucket : old) {
+                for (Node n = bucket; n != null; ) {
+                    Node next = n.next;
+                    int index = hash(n.nw, n.ne, n.sw, n.se) & (table.length - 1);
+                    n.next = table[index];
+                    table[index] = n;
+                    n = next;
+                }
+            }
+        }
+        int index = hash & (table.length - 1);
+        node.next = table[index];
+        table[index] = node;
+        size++;
+    }
+
+    private static int hash(Node nw, Node ne, Node sw, Node se) {
+        int h = nw.id;
+        h = h * 31 + ne.id;
+        h = h * 31 + sw.id;
+        h = h * 31 + se.id;
+        return h ^ (h >>> 16);
+    }
+
+    // Forgets every node the current root doesn't use, and every remembered future
+    private void collect() {
+        table = new Node[table.length];
+        size = 0;
+        collections++;
+        for (int level = 1; level < empty.length && empty[level] != null; level++) {
+            keep(empty[level]);
+        }
+        keep(root);
+    }
+
+    private void keep(Node node) {
+        if (node.level == 0 || node.collection == collections) {
+            return;
+        }
+        node.results = null;
+        node.collection = collections;
+        keep(node.nw);
+        keep(node.ne);
+        keep(node.sw);
+        keep(node.se);
+        int index = hash(node.nw, node.ne, node.sw, node.se) & (table.length - 1);
+        node.next = table[index];
+        table[index] = node;
+        size++;
+    }
+
+    private static final TableFull TABLE_FULL = new TableFull();
+
+    // Thrown by join to abandon a jump once the table holds maxNodes nodes
+    private static class TableFull extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        TableFull() {
+            super(null, null, false, false); // Thrown often, so no stack trace
+        }
+    }
+
+    // A square of 2^level by 2^level cells, never changed once made
+    private static class Node {
+        final Node nw, ne, sw, se;
+        final int level;
+        final long population;
+        final int id;
+        Node[] results; // The middle 2^j generations later, by j
+        Node next;      // Next node in the same bucket of the table
+        int collection; // The last collection that kept this node
+
+        // A single cell
+        Node(int id, int alive) {
+            nw = ne = sw = se = null;
+            level = 0;
+            population = alive;
+            this.id = id;
+        }
+
+        Node(Node nw, Node ne, Node sw, Node se, int id) {
+            this.nw = nw;
+            this.ne = ne;
+            this.sw = sw;
+            this.se = se;
+            level = nw.level + 1;
+            population = nw.population + ne.population + sw.population + se.population;
+            this.id = id;
+        }
+    }
+}
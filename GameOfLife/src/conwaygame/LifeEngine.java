@@ -0,0 +1,53 @@
+package conwaygame;
+
+/**
+ * A LifeEngine stores a board and computes its generations in its own way, so
+ * GameOfLife can hand the work to whichever one suits the board best. Every engine
+ * follows the same rules as GameOfLife.
+ */
+public interface LifeEngine {
+
+    /**
+     * Returns the number of rows in the board.
+     *
+     * @return the number of rows.
+     */
+    int getRows();
+
+    /**
+     * Returns the number of columns in the board.
+     *
+     * @return the number of columns.
+     */
+    int getCols();
+
+    /**
+     * Returns the status of the cell at (row, col).
+     *
+     * @param row the row position of the cell.
+     * @param col the column position of the cell.
+     * @return true if the cell is alive, false if it is dead.
+     */
+    boolean getCellState(int row, int col);
+
+    /**
+     * Returns the total number of alive cells in the board.
+     *
+     * @return the number of alive cells.
+     */
+    int getTotalAliveCells();
+
+    /**
+     * Moves the board forward by n generations.
+     *
+     * @param n the number of generations to compute.
+     */
+    void nextGeneration(long n);
+
+    /**
+     * Copies the board into grid, which has the same number of rows and columns.
+     *
+     * @param grid the boolean[][] to overwrite with the current generation.
+     */
+    void toGrid(boolean[][] grid);
+}
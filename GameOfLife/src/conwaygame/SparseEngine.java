@@ -0,0 +1,236 @@
+package conwaygame;
+
+import java.util.Arrays;
+
+/**
+ * Sparse LifeEngine for large boards that are mostly dead, wrapping around at the
+ * edges like GameOfLife's. Only the alive cells are stored, and a cell is only looked
+ * at when it or one of its neighbors changed in the last generation, since any other
+ * cell keeps its state. A generation costs time in proportion to how much is
+ * happening on the board, not to its size.
+ */
+public class SparseEngine implements LifeEngine {
+
+    private final int rows, cols;
+
+    private final LongSet alive = new LongSet();      // Keys of the alive cells
+    private final LongSet candidates = new LongSet(); // Cells that may change this generation
+    private long[] changed;                           // Keys of the cells that changed last generation
+    private int changedCount;
+    private long[] nextChanged = new long[16];        // Filled during a step, then swapped with changed
+    private int totalAliveCells;
+
+    /**
+     * Collects the alive cells of the given grid, which is left unchanged.
+     *
+     * @param grid the boolean[][] with the starting generation.
+     */
+    public SparseEngine(boolean[][] grid) {
+        rows = grid.length;
+        cols = grid[0].length;
+        changed = new long[16];
+
+        // Every alive cell counts as changed, so the first step looks at all of them
+        for (int i = 0; i < rows; i++) {
+            for (int j = 0; j < cols; j++) {
+                if (grid[i][j]) {
+                    alive.add(key(i, j));
+                    changed = append(changed, changedCount++, key(i, j));
+                }
+            }
+        }
+        totalAliveCells = alive.size;
+    }
+
+    public int getRows() {
+        return rows;
+    }
+
+    public int getCols() {
+        return cols;
+    }
+
+    public boolean getCellState(int row, int col) {
+        return alive.contains(key(row, col));
+    }
+
+    public int getTotalAliveCells() {
+        return totalAliveCells;
+    }
+
+    public void nextGeneration(long n) {
+        for (long i = 0; i < n && changedCount > 0; i++) {
+            step();
+        }
+    }
+
+    public void toGrid(boolean[][] grid) {
+        for (boolean[] row : grid) {
+            Arrays.fill(row, false);
+        }
+        for (long key : alive.keys) {
+            if (key != LongSet.EMPTY) {
+                grid[(int) (key / cols)][(int) (key % cols)] = true;
+            }
+        }
+    }
+
+    private void step() {
+        // Only a cell that changed, or a neighbor of one, can change now
+        candidates.clear();
+        for (int i = 0; i < changedCount; i++) {
+            int row = (int) (changed[i] / cols), col = (int) (changed[i] % cols);
+            for (int dr = -1; dr <= 1; dr++) {
+                for (int dc = -1; dc <= 1; dc++) {
+                    candidates.add(key((row + dr + rows) % rows, (col + dc + cols) % cols));
+                }
+            }
+        }
+
+        // Decide every candidate before changing anything
+        int nextCount = 0;
+        for (long key : candidates.keys) {
+            if (key == LongSet.EMPTY) {
+                continue;
+            }
+            int row = (int) (key / cols), col = (int) (key % cols);
+            boolean isAlive = alive.contains(key);
+            int buddies = numOfAliveNeighbors(row, col);
+            if ((buddies == 3 || (buddies == 2 && isAlive)) != isAlive) {
+                nextChanged = append(nextChanged, nextCount++, key);
+            }
+        }
+
+        for (int i = 0; i < nextCount; i++) {
+            if (alive.remove(nextChanged[i])) {
+                totalAliveCells--;
+            } else {
+                alive.add(nextChanged[i]);
+                totalAliveCells++;
+            }
+        }
+
+        long[] temp = changed;
+        changed = nextChanged;
+        changedCount = nextCount;
+        nextChanged = temp;
+    }
+
+    // Counts the alive neighbors with the same wrap around as GameOfLife.numOfAliveNeighbors
+    private int numOfAliveNeighbors(int row, int col) {
+        int aliveBuddy = 0;
+        for (int dr = -1; dr <= 1; dr++) {
+            for (int dc = -1; dc <= 1; dc++) {
+                if ((dr != 0 || dc != 0) && alive.contains(key((row + dr + rows) % rows, (col + dc + cols) % cols))) {
+                    aliveBuddy++;
+                }
+            }
+        }
+        return aliveBuddy;
+    }
+
+    private long key(int row, int col) {
+        return (long) row * cols + col;
+    }
+
+    // Sets array[index] to key, growing the array first if it is full
+    private static long[] append(long[] array, int index, long key) {
+        if (index == array.length) {
+            array = Arrays.copyOf(array, array.length * 2);
+        }
+        array[index] = key;
+        return array;
+    }
+
+    // Open addressing hash set of non-negative longs, without boxing
+    private static class LongSet {
+        static final long EMPTY = -1;
+
+        long[] keys = newKeys(16);
+        int size;
+
+        boolean contains(long key) {
+            int mask = keys.length - 1;
+            for (int i = slot(key, mask); keys[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        boolean add(long key) {
+            if (size >= keys.length / 2) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            for (; keys[i] != EMPTY; i = (i + 1) & mask) {
+                if (keys[i] == key) {
+                    return false;
+                }
+            }
+            keys[i] = key;
+            size++;
+            return true;
+        }
+
+        boolean remove(long key) {
+            int mask = keys.length - 1;
+            int i = slot(key, mask);
+            while (keys[i] != key) {
+                if (keys[i] == EMPTY) {
+                    return false;
+                }
+                i = (i + 1) & mask;
+            }
+            // Shift later keys of the run back into the hole so lookups still find them
+            for (int j = (i + 1) & mask; keys[j] != EMPTY; j = (j + 1) & mask) {
+                int home = slot(keys[j], mask);
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    i = j;
+                }
+            }
+            keys[i] = EMPTY;
+            size--;
+            return true;
+        }
+
+        // Empties the set, also giving back the room of a much bigger earlier generation
+        void clear() {
+            if (keys.length > 64 && size < keys.length / 8) {
+                keys = newKeys(Math.max(16, Integer.highestOneBit(size) * 4));
+            } else {
+                Arrays.fill(keys, EMPTY);
+            }
+            size = 0;
+        }
+
+        private void resize(int capacity) {
+            long[] old = keys;
+            keys = newKeys(capacity);
+            int mask = capacity - 1;
+            for (long key : old) {
+                if (key != EMPTY) {
+                    int i = slot(key, mask);
+                    while (keys[i] != EMPTY) {
+                        i = (i + 1) & mask;
+                    }
+                    keys[i] = key;
+                }
+            }
+        }
+
+        private static int slot(long key, int mask) {
+            long h = key * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32)) & mask;
+        }
+
+        private static long[] newKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+}
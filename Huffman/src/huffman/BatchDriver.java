@@ -0,0 +1,212 @@
+package huffman;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * This class compresses, decompresses and verifies many files without prompting,
+ * unlike Driver, so it can be scripted. Files run concurrently, and it prints how
+ * long every HuffmanCoding step took for every file, then the totals.
+ *
+ * Usage: java huffman.BatchDriver [-j threads] [-o output directory] file|glob|@list ...
+ * - a glob like logs/*.txt matches files in one directory
+ * - @list reads one file name per line from list
+ * - without -o, the encoded and decoded files are deleted after verifying
+ * - with -o, files are named after the input file, and files that share a name
+ *   get their position on the command line in front, like 3-x.txt.huff
+ */
+public class BatchDriver {
+    private static final String[] STAGES = {"makeSortedList", "makeTree", "makeEncodings", "encode", "decode", "verify"};
+
+    public static void main(String[] args) throws Exception {
+        int threads = Runtime.getRuntime().availableProcessors();
+        Path outputDir = null;
+        List<Path> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-j") && i + 1 < args.length) threads = Integer.parseInt(args[++i]);
+            else if (args[i].equals("-o") && i + 1 < args.length) outputDir = Paths.get(args[++i]);
+            else addFiles(args[i], files);
+        }
+        if (files.isEmpty()) {
+            System.err.println("Usage: java huffman.BatchDriver [-j threads] [-o output directory] file|glob|@list ...");
+            return;
+        }
+        if (outputDir != null) Files.createDirectories(outputDir);
+
+        ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, threads));
+        List<Future<Result>> results = new ArrayList<>();
+        List<String> names = outputNames(files);
+        final Path output = outputDir;
+        long start = System.nanoTime();
+        for (int i = 0; i < files.size(); i++) {
+            Path file = files.get(i);
+            String name = names.get(i);
+            results.add(pool.submit(() -> run(file, output, name)));
+        }
+
+        System.out.printf("%-32s %12s %12s %7s", "file", "bytes", "encoded", "ratio");
+        for (String stage : STAGES) System.out.printf(" %14s", stage + " ms");
+        System.out.printf(" %10s %s%n", "MB/s", "status");
+
+        Result total = new Result(Paths.get("total"));
+        int failed = 0;
+        for (Future<Result> future : results) {
+            Result result = future.get();
+            print(result);
+            total.add(result);
+            if (!result.ok) failed++;
+        }
+        pool.shutdown();
+        long wallNanos = System.nanoTime() - start;
+
+        total.ok = failed == 0;
+        print(total);
+        System.out.printf("%d files, %d failed, %.1f MB/s wall clock with %d threads%n", files.size(), failed,
+                total.bytes / (double) (1 << 20) / (wallNanos / 1e9), threads);
+        if (failed > 0) System.exit(1);
+    }
+
+    // Adds a file name, every file matching a glob, or every file named in an @list
+    private static void addFiles(String arg, List<Path> files) throws IOException {
+        if (arg.startsWith("@")) {
+            for (String line : Files.readAllLines(Paths.get(arg.substring(1)))) {
+                if (!line.trim().isEmpty()) files.add(Paths.get(line.trim()));
+            }
+        }
+        else if (arg.contains("*") || arg.contains("?") || arg.contains("[") || arg.contains("{")) {
+            Path glob = Paths.get(arg);
+            Path dir = glob.getParent() != null ? glob.getParent() : Paths.get(".");
+            List<Path> matches = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, glob.getFileName().toString())) {
+                for (Path file : stream) {
+                    if (Files.isRegularFile(file)) matches.add(file);
+                }
+            }
+            matches.sort(null);
+            files.addAll(matches);
+        }
+        else {
+            files.add(Paths.get(arg));
+        }
+    }
+
+    // Names every file's output after the file, so files running at the same time
+    // never write to the same output, numbering the ones with the same name
+    private static List<String> outputNames(List<Path> files) {
+        Map<String, Integer> uses = new HashMap<>();
+        for (Path file : files) uses.merge(file.getFileName().toString().toLowerCase(), 1, Integer::sum);
+
+        List<String> names = new ArrayList<>();
+        Set<String> taken = new HashSet<>(uses.keySet()); // lower case, for case insensitive file systems
+        for (int i = 0; i < files.size(); i++) {
+            String name = files.get(i).getFileName().toString();
+            if (uses.get(name.toLowerCase()) > 1) {
+                int n = i + 1;
+                while (!taken.add((n + "-" + name).toLowerCase())) n += files.size();
+                name = n + "-" + name;
+            }
+            names.add(name);
+        }
+        return names;
+    }
+
+    // Runs every step on one file, timing each one
+    private static Result run(Path file, Path outputDir, String name) {
+        Result result = new Result(file);
+        Path encoded = null, decoded = null;
+        try {
+            if (outputDir != null) {
+                encoded = outputDir.resolve(name + ".huff");
+                decoded = outputDir.resolve(name + ".out");
+            }
+            else {
+                encoded = Files.createTempFile("huffman", ".huff");
+                decoded = Files.createTempFile("huffman", ".out");
+            }
+            result.bytes = Files.size(file);
+            HuffmanCoding coding = new HuffmanCoding(file.toString());
+
+            long t = System.nanoTime();
+            coding.makeSortedList();
+            t = result.lap(0, t);
+            coding.makeTree();
+            t = result.lap(1, t);
+            coding.makeEncodings();
+            t = result.lap(2, t);
+            coding.encode(encoded.toString());
+            t = result.lap(3, t);
+            coding.decode(encoded.toString(), decoded.toString());
+            t = result.lap(4, t);
+            result.ok = Files.mismatch(file, decoded) == -1;
+            result.lap(5, t);
+
+            result.encodedBytes = Files.size(encoded);
+            if (!result.ok) result.error = "decoded file differs";
+        }
+        catch (Exception e) {
+            result.error = e.toString();
+        }
+        finally {
+            if (outputDir == null) {
+                try {
+                    if (encoded != null) Files.deleteIfExists(encoded);
+                    if (decoded != null) Files.deleteIfExists(decoded);
+                }
+                catch (IOException e) {
+                    System.err.println("Could not delete temporary files for " + file);
+                }
+            }
+        }
+        return result;
+    }
+
+    private static void print(Result result) {
+        System.out.printf("%-32s %12d %12d %7.3f", result.file, result.bytes, result.encodedBytes,
+                result.bytes == 0 ? 0 : result.encodedBytes / (double) result.bytes);
+        long nanos = 0;
+        for (long stage : result.stageNanos) {
+            System.out.printf(" %14.2f", stage / 1e6);
+            nanos += stage;
+        }
+        System.out.printf(" %10.1f %s%n", nanos == 0 ? 0 : result.bytes / (double) (1 << 20) / (nanos / 1e9),
+                result.ok ? "ok" : "FAILED " + (result.error != null ? result.error : ""));
+    }
+
+    // The sizes and step times of one file, or the totals of many
+    private static class Result {
+        final Path file;
+        long bytes, encodedBytes;
+        final long[] stageNanos = new long[STAGES.length];
+        boolean ok;
+        String error;
+
+        Result(Path file) {
+            this.file = file;
+        }
+
+        long lap(int stage, long start) {
+            long now = System.nanoTime();
+            stageNanos[stage] = now - start;
+            return now;
+        }
+
+        void add(Result other) {
+            bytes += other.bytes;
+            encodedBytes += other.encodedBytes;
+            for (int i = 0; i < stageNanos.length; i++) stageNanos[i] += other.stageNanos[i];
+        }
+    }
+}
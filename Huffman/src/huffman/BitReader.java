@@ -0,0 +1,144 @@
+package huffman;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+
+/**
+ * This class reads bits most significant first out of a byte buffer, which is
+ * refilled from a channel or the next window of a mapped file when one is given.
+ * Bits wait in a 64-bit accumulator so the decoder can look ahead several bits
+ * at a time without building a String of 1's and 0's. Past the end of the input
+ * it reads zeroes.
+ */
+public class BitReader {
+    private static final int BUFFER_SIZE = 1 << 16; // 64 KB per read
+
+    private final ReadableByteChannel channel; // null when not reading from a channel
+    private final MappedFile mapped;           // null when not reading from a mapped file
+    private ByteBuffer buffer;
+
+    private long acc;  // pending bits, left aligned
+    private int count; // number of pending bits in acc
+    private long bitsRead;
+
+    /**
+     * Reads from the channel in 64 KB chunks
+     *
+     * @param channel The channel to read from, at the position to start at
+     */
+    public BitReader(ReadableByteChannel channel) {
+        this.channel = channel;
+        this.mapped = null;
+        buffer = ByteBuffer.allocate(BUFFER_SIZE);
+        buffer.flip();
+    }
+
+    /**
+     * Reads the remaining bytes of buffer, and nothing else
+     *
+     * @param buffer The bytes to read, from position to limit
+     */
+    public BitReader(ByteBuffer buffer) {
+        this.channel = null;
+        this.mapped = null;
+        this.buffer = buffer;
+    }
+
+    /**
+     * Reads straight out of the mapped windows of a file, one after the other
+     *
+     * @param mapped The mapped file, at the position to start at
+     */
+    public BitReader(MappedFile mapped) throws IOException {
+        this.channel = null;
+        this.mapped = mapped;
+        ByteBuffer first = mapped.next();
+        buffer = first != null ? first : ByteBuffer.allocate(0);
+    }
+
+    /**
+     * Returns the next k bits without consuming them
+     *
+     * @param k The number of bits to look at, between 1 and 32
+     */
+    public int peek(int k) throws IOException {
+        if (count < k) refill();
+        return (int) (acc >>> (64 - k));
+    }
+
+    /**
+     * Consumes k bits that were already looked at with peek
+     *
+     * @param k The number of bits to consume, at most the k passed to peek
+     */
+    public void skip(int k) {
+        acc <<= k;
+        count -= k;
+        bitsRead += k;
+    }
+
+    /**
+     * Reads and consumes the next k bits
+     *
+     * @param k The number of bits to read, between 1 and 32
+     */
+    public int readBits(int k) throws IOException {
+        int bits = peek(k);
+        skip(k);
+        return bits;
+    }
+
+    /**
+     * Skips the padding at the start of the writeBitString format: the zeroes and
+     * the 1 that signifies the end of padding, at most 8 bits in all
+     *
+     * @return The number of bits skipped
+     */
+    public int skipPadding() throws IOException {
+        int padding = Math.min(Integer.numberOfLeadingZeros(peek(8)) - 24 + 1, 8);
+        skip(padding);
+        return padding;
+    }
+
+    /**
+     * Returns the number of bits consumed so far
+     */
+    public long getBitsRead() {
+        return bitsRead;
+    }
+
+    // Tops the accumulator up to at least 57 bits, or as far as the input goes
+    private void refill() throws IOException {
+        if (buffer.remaining() >= 8) {
+            // Load 8 bytes at once and keep the whole ones that fit, the bits of a partial
+            // byte land exactly where the next refill would put them again
+            int position = buffer.position();
+            int whole = (64 - count) >>> 3;
+            acc |= buffer.getLong(position) >>> count;
+            buffer.position(position + whole);
+            count += whole << 3;
+            return;
+        }
+        while (count <= 56) {
+            if (!buffer.hasRemaining()) {
+                if (mapped != null) {
+                    ByteBuffer next = mapped.next();
+                    if (next == null) return;
+                    buffer = next;
+                    continue;
+                }
+                if (channel == null) return;
+                buffer.clear();
+                int n = channel.read(buffer);
+                buffer.flip();
+                if (n <= 0) {
+                    if (n == -1) return;
+                    continue;
+                }
+            }
+            acc |= (long) (buffer.get() & 0xFF) << (56 - count);
+            count += 8;
+        }
+    }
+}
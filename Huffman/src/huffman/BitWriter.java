@@ -0,0 +1,102 @@
+package huffman;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * This class packs variable length codewords into bytes, most significant bit
+ * first, the same way writeBitString does. Bits collect in a 64-bit accumulator
+ * and are flushed in whole bytes through an internal buffer, so memory stays flat
+ * no matter how long the output is.
+ */
+public class BitWriter implements Closeable {
+    private static final int BUFFER_SIZE = 1 << 16; // 64 KB output buffer
+
+    private final OutputStream out;
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int bufferIndex;
+
+    private long acc;  // pending bits, right aligned
+    private int count; // number of pending bits in acc, always < 32 between writes
+    private long bitsWritten;
+
+    public BitWriter(OutputStream out) {
+        this.out = out;
+    }
+
+    /**
+     * Writes the padding that writeBitString puts in front of a bit string of the
+     * given length: zeroes and then a one, bringing the total to a multiple of 8
+     *
+     * @param bitLength The number of bits that will follow
+     */
+    public void writePadding(long bitLength) throws IOException {
+        int padding = 8 - (int) (bitLength % 8);
+        write(1, padding);
+    }
+
+    /**
+     * Appends the lowest length bits of bits, most significant first
+     *
+     * @param bits The codeword, right aligned
+     * @param length The number of bits to write, between 0 and 64
+     */
+    public void write(long bits, int length) throws IOException {
+        if (length > 32) {
+            // Split long codewords so the accumulator never overflows
+            write(bits >>> 32, length - 32);
+            length = 32;
+        }
+        acc = (acc << length) | (bits & ((1L << length) - 1));
+        count += length;
+        bitsWritten += length;
+
+        if (count >= 32) {
+            if (bufferIndex + 4 > BUFFER_SIZE) flushBuffer();
+            count -= 32;
+            int word = (int) (acc >>> count);
+            buffer[bufferIndex++] = (byte) (word >>> 24);
+            buffer[bufferIndex++] = (byte) (word >>> 16);
+            buffer[bufferIndex++] = (byte) (word >>> 8);
+            buffer[bufferIndex++] = (byte) word;
+        }
+    }
+
+    /**
+     * Returns the number of bits written so far, including padding
+     */
+    public long getBitsWritten() {
+        return bitsWritten;
+    }
+
+    /**
+     * Writes out every complete byte, pads a trailing partial byte with zeroes,
+     * and flushes the underlying stream
+     */
+    public void flush() throws IOException {
+        while (count >= 8) {
+            if (bufferIndex == BUFFER_SIZE) flushBuffer();
+            count -= 8;
+            buffer[bufferIndex++] = (byte) (acc >>> count);
+        }
+        if (count > 0) {
+            if (bufferIndex == BUFFER_SIZE) flushBuffer();
+            buffer[bufferIndex++] = (byte) (acc << (8 - count));
+            bitsWritten += 8 - count;
+            count = 0;
+        }
+        flushBuffer();
+        out.flush();
+    }
+
+    public void close() throws IOException {
+        flush();
+        out.close();
+    }
+
+    private void flushBuffer() throws IOException {
+        out.write(buffer, 0, bufferIndex);
+        bufferIndex = 0;
+    }
+}
@@ -0,0 +1,507 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.zip.CRC32C;
+import java.util.zip.CheckedInputStream;
+
+/**
+ * This class compresses large files with huffman codes, split into fixed size
+ * blocks so that every step runs on a ForkJoinPool. Blocks are counted in parallel,
+ * then encoded in parallel, and the encoded file keeps an index of where every
+ * block starts so decoding is parallel too. The index also lets decodeRange decode
+ * just the blocks of a byte range. The header, the index and every block have a
+ * CRC32C checksum, so verify can find corrupt or truncated files without decoding them.
+ *
+ * Blocks that no code would shrink, like already compressed data, are stored raw.
+ * Most are found from the entropy of their counts, charged for the code length header
+ * a code of their own would need, before any code is built for them.
+ *
+ * encode uses one code for the whole file, made from the merged histograms.
+ * encodeAdaptive makes a code per block instead, for inputs whose characters
+ * drift, but keeps using the previous block's code unless a new one saves enough.
+ *
+ * Encoded file layout:
+ * - int magic, int version, int block size, long original length, int block count
+ * - int table count, then every table as a code length header (CodeTable.writeHeader)
+ * - block count ints: the table of every block, which never decreases from block to block,
+ *   or RAW_BLOCK for blocks stored as they are
+ * - block count + 1 longs: the file offset of every block, then of the end of the file
+ * - block count ints: the CRC32C of every block's encoded bytes
+ * - int: the CRC32C of everything above
+ * - every block's bits in the format of writeBitString, or its bytes if it is raw
+ */
+public class BlockCoding {
+    public static final int MAGIC = 0x48554642;           // "HUFB"
+    public static final int VERSION = 4;                  // 2 added the checksums, 3 raw blocks, 4 the header checksum
+    public static final int RAW_BLOCK = -1;               // table index of blocks stored raw
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 20; // 1 MB
+    public static final double DEFAULT_MIN_SAVING = 0.01; // new tables must save 1% of a block
+
+    // Only static helpers, don't instantiate
+    private BlockCoding() { }
+
+    /**
+     * Encodes inputFile into encodedFile with the default block size on the common pool
+     *
+     * @param inputFile The file to encode
+     * @param encodedFile The file to write (doesn't need to exist yet)
+     */
+    public static void encode(String inputFile, String encodedFile) throws IOException {
+        encode(inputFile, encodedFile, DEFAULT_BLOCK_SIZE, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Encodes inputFile into encodedFile with one code, blockSize bytes per block
+     *
+     * @param inputFile The file to encode
+     * @param encodedFile The file to write (doesn't need to exist yet)
+     * @param blockSize The number of input bytes per block
+     * @param pool The pool that counts and encodes the blocks
+     */
+    public static void encode(String inputFile, String encodedFile, int blockSize, ForkJoinPool pool) throws IOException {
+        encode(inputFile, encodedFile, blockSize, pool, false, 0);
+    }
+
+    /**
+     * Encodes inputFile into encodedFile with a code per block, reusing the previous
+     * block's code unless a new one would save more than minSaving of its size
+     *
+     * @param inputFile The file to encode
+     * @param encodedFile The file to write (doesn't need to exist yet)
+     * @param blockSize The number of input bytes per block
+     * @param minSaving The fraction of the block's encoded size, header included, that a
+     *                  new code has to save over the previous one
+     * @param pool The pool that counts and encodes the blocks
+     */
+    public static void encodeAdaptive(String inputFile, String encodedFile, int blockSize, double minSaving,
+                                      ForkJoinPool pool) throws IOException {
+        encode(inputFile, encodedFile, blockSize, pool, true, minSaving);
+    }
+
+    private static void encode(String inputFile, String encodedFile, int blockSize, ForkJoinPool pool,
+                               boolean adaptive, double minSaving) throws IOException {
+        if (blockSize <= 0) throw new IllegalArgumentException("Block size must be positive");
+
+        try (FileChannel in = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(encodedFile), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            long length = in.size();
+            int blockCount = (int) ((length + blockSize - 1) / blockSize);
+
+            // Count every block in parallel, then pick the code of every block
+            long[][] blockCounts = pool.invoke(new CountTask(in, blockSize, length, 0, blockCount));
+            ArrayList<CodeTable> tables = new ArrayList<>();
+            int[] blockTables = new int[blockCount];
+            if (adaptive) chooseTables(blockCounts, minSaving, tables, blockTables);
+            else chooseTable(blockCounts, tables, blockTables);
+
+            ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+            DataOutputStream header = new DataOutputStream(headerBytes);
+            header.writeInt(MAGIC);
+            header.writeInt(VERSION);
+            header.writeInt(blockSize);
+            header.writeLong(length);
+            header.writeInt(blockCount);
+            header.writeInt(tables.size());
+            for (CodeTable table : tables) table.writeHeader(header);
+            for (int table : blockTables) header.writeInt(table);
+            header.flush();
+
+            // Leave room for the index, and fill it in once every block's size is known
+            long[] offsets = new long[blockCount + 1];
+            int[] checksums = new int[blockCount];
+            long indexPosition = headerBytes.size();
+            long position = indexPosition + 8L * offsets.length + 4L * checksums.length + 4;
+            CRC32C crc = new CRC32C();
+
+            // Encode a window of blocks at a time, so memory stays bounded, and write them in order
+            int window = Math.max(1, pool.getParallelism() * 2);
+            ArrayList<ForkJoinTask<byte[]>> pending = new ArrayList<>();
+            for (int first = 0; first < blockCount; first += window) {
+                pending.clear();
+                for (int b = first; b < Math.min(first + window, blockCount); b++) {
+                    final int block = b;
+                    final CodeTable table = blockTables[block] == RAW_BLOCK ? null : tables.get(blockTables[block]);
+                    pending.add(pool.submit(() -> encodeBlock(in, table, blockCounts[block],
+                            (long) block * blockSize, blockLength(block, blockSize, length))));
+                }
+                for (int i = 0; i < pending.size(); i++) {
+                    byte[] encoded = join(pending.get(i));
+                    offsets[first + i] = position;
+                    crc.reset();
+                    crc.update(encoded);
+                    checksums[first + i] = (int) crc.getValue();
+                    writeFully(out, ByteBuffer.wrap(encoded), position);
+                    position += encoded.length;
+                }
+            }
+            offsets[blockCount] = position;
+
+            ByteBuffer index = ByteBuffer.allocate(8 * offsets.length + 4 * checksums.length + 4);
+            for (long offset : offsets) index.putLong(offset);
+            for (int checksum : checksums) index.putInt(checksum);
+            crc.reset();
+            crc.update(headerBytes.toByteArray());
+            crc.update(index.array(), 0, index.position());
+            index.putInt((int) crc.getValue());
+            index.flip();
+            writeFully(out, ByteBuffer.wrap(headerBytes.toByteArray()), 0);
+            writeFully(out, index, indexPosition);
+        }
+    }
+
+    // Makes one code out of the merged histograms of every block that might shrink,
+    // and stores the blocks it doesn't shrink raw. A block is left out of the merge when
+    // even a code of its own couldn't pay for its header, since its counts would only
+    // make the code worse for the other blocks.
+    private static void chooseTable(long[][] blockCounts, ArrayList<CodeTable> tables, int[] blockTables) {
+        long[] counts = new long[HuffmanCoding.ALPHABET_SIZE];
+        for (int b = 0; b < blockCounts.length; b++) {
+            if (Entropy.storeRaw(blockCounts[b], 8L * CodeTable.headerSize(blockCounts[b]))) {
+                blockTables[b] = RAW_BLOCK;
+                continue;
+            }
+            for (int i = 0; i < counts.length; i++) counts[i] += blockCounts[b][i];
+        }
+
+        CodeTable table = CodeTable.canonical(CodeLengths.huffman(counts));
+        tables.add(table);
+        for (int b = 0; b < blockCounts.length; b++) {
+            if (blockTables[b] == RAW_BLOCK) continue;
+            // Raw blocks were left out of the code, so it may lack their characters
+            if (!table.covers(blockCounts[b]) || table.encodedLength(blockCounts[b]) >= 8L * total(blockCounts[b])) {
+                blockTables[b] = RAW_BLOCK;
+            }
+        }
+    }
+
+    // Goes through the blocks in order, adding a new table only when it beats the current one
+    private static void chooseTables(long[][] blockCounts, double minSaving, ArrayList<CodeTable> tables, int[] blockTables) {
+        CodeTable current = null;
+
+        for (int b = 0; b < blockCounts.length; b++) {
+            // Neither the current code nor a new one with its header can beat raw,
+            // which is known without building the new one
+            long rawBits = 8L * total(blockCounts[b]);
+            boolean canReuse = current != null && current.covers(blockCounts[b]);
+            if ((!canReuse || current.encodedLength(blockCounts[b]) >= rawBits)
+                    && Entropy.storeRaw(blockCounts[b], 8L * CodeTable.headerSize(blockCounts[b]))) {
+                blockTables[b] = RAW_BLOCK;
+                continue;
+            }
+            CodeTable table = CodeTable.canonical(CodeLengths.huffman(blockCounts[b]));
+
+            // Compare in bits, charging the new table for its header
+            long newCost = table.encodedLength(blockCounts[b]) + 8L * table.headerSize();
+            boolean reuse = canReuse && current.encodedLength(blockCounts[b]) - newCost <= minSaving * newCost;
+            if ((reuse ? current.encodedLength(blockCounts[b]) : newCost) >= rawBits) {
+                blockTables[b] = RAW_BLOCK;
+                continue;
+            }
+            if (!reuse) {
+                tables.add(table);
+                current = table;
+            }
+            blockTables[b] = tables.size() - 1;
+        }
+    }
+
+    /**
+     * Decodes a file written by encode into decodedFile on the common pool
+     *
+     * @param encodedFile The file which has already been encoded by encode()
+     * @param decodedFile The name of the new file we want to decode into
+     */
+    public static void decode(String encodedFile, String decodedFile) throws IOException {
+        decode(encodedFile, decodedFile, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Decodes a file written by encode or encodeAdaptive into decodedFile, one task per block
+     *
+     * @param encodedFile The file which has already been encoded by encode()
+     * @param decodedFile The name of the new file we want to decode into
+     * @param pool The pool that decodes the blocks
+     */
+    public static void decode(String encodedFile, String decodedFile, ForkJoinPool pool) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(encodedFile), StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(Paths.get(decodedFile), StandardOpenOption.CREATE,
+                     StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Index index = new Index(in, encodedFile);
+            int[] blockTables = index.blockTables;
+            int blockCount = blockTables.length;
+
+            // Every block decodes on its own and goes straight to its place in the output.
+            // Blocks go a window at a time, and since a table is only used by consecutive
+            // blocks, only the lookup tables of the current window are kept around.
+            DecodeTable[] decodeTables = new DecodeTable[index.tables.length];
+            int window = Math.max(1, pool.getParallelism() * 4);
+            ArrayList<ForkJoinTask<?>> tasks = new ArrayList<>();
+            for (int first = 0; first < blockCount; first += window) {
+                tasks.clear();
+                for (int b = first; b < Math.min(first + window, blockCount); b++) {
+                    final int block = b;
+                    if (blockTables[b] != RAW_BLOCK && decodeTables[blockTables[b]] == null) {
+                        decodeTables[blockTables[b]] = new DecodeTable(index.tables[blockTables[b]]);
+                    }
+                    final DecodeTable table = blockTables[b] == RAW_BLOCK ? null : decodeTables[blockTables[b]];
+                    tasks.add(pool.submit(() -> {
+                        byte[] decoded = decodeBlock(in, table, index, block);
+                        writeFully(out, ByteBuffer.wrap(decoded), (long) block * index.blockSize);
+                        return null;
+                    }));
+                }
+                for (ForkJoinTask<?> task : tasks) join(task);
+
+                int next = Math.min(first + window, blockCount);
+                for (int t = 0; next < blockCount && t < blockTables[next]; t++) decodeTables[t] = null;
+            }
+        }
+    }
+
+    /**
+     * Decodes only the blocks that hold the given range of the original file
+     *
+     * @param encodedFile The file which has already been encoded by encode()
+     * @param start The position in the original file of the first byte to decode
+     * @param length The number of bytes to decode, cut short at the end of the file
+     * @return The original bytes from start to start + length
+     */
+    public static byte[] decodeRange(String encodedFile, long start, int length) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(encodedFile), StandardOpenOption.READ)) {
+            Index index = new Index(in, encodedFile);
+            if (start < 0 || length < 0) throw new IllegalArgumentException("Range must not be negative");
+            long end = Math.min(start + length, index.length);
+            if (start >= end) return new byte[0];
+
+            ByteArrayOutputStream range = new ByteArrayOutputStream((int) (end - start));
+            DecodeTable table = null;
+            int tableIndex = -1;
+            for (int b = (int) (start / index.blockSize); (long) b * index.blockSize < end; b++) {
+                if (index.blockTables[b] != RAW_BLOCK && index.blockTables[b] != tableIndex) {
+                    tableIndex = index.blockTables[b];
+                    table = new DecodeTable(index.tables[tableIndex]);
+                }
+                byte[] decoded = decodeBlock(in, table, index, b);
+                long blockStart = (long) b * index.blockSize;
+                int from = (int) (Math.max(start, blockStart) - blockStart);
+                int to = (int) (Math.min(end, blockStart + decoded.length) - blockStart);
+                range.write(decoded, from, to - from);
+            }
+            return range.toByteArray();
+        }
+    }
+
+    /**
+     * Checks that an encoded file is whole and that its header, index and every block
+     * match their checksums, without decoding anything. Never throws: any problem
+     * is printed and makes it return false.
+     *
+     * @param encodedFile The file which has already been encoded by encode()
+     * @return true if the file is intact
+     */
+    public static boolean verify(String encodedFile) {
+        try (FileChannel in = FileChannel.open(Paths.get(encodedFile), StandardOpenOption.READ)) {
+            Index index = new Index(in, encodedFile);
+            for (int b = 0; b < index.blockTables.length; b++) readBlock(in, index, b);
+            return true;
+        }
+        catch (IOException e) {
+            System.err.println(e.getMessage());
+            return false;
+        }
+    }
+
+    // Encodes one block of the input, in the format of writeBitString, or copies it if table is null
+    private static byte[] encodeBlock(FileChannel in, CodeTable table, long[] counts, long start, int length) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(length);
+        readFully(in, block, start);
+        block.flip();
+        if (table == null) return block.array();
+
+        ByteArrayOutputStream encoded = new ByteArrayOutputStream(length / 2);
+        BitWriter out = new BitWriter(encoded);
+        out.writePadding(table.encodedLength(counts));
+        table.encode(block, out);
+        out.flush();
+        return encoded.toByteArray();
+    }
+
+    // Reads the encoded bytes of a block, and checks them against the block's checksum
+    private static ByteBuffer readBlock(FileChannel in, Index index, int b) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate((int) (index.offsets[b + 1] - index.offsets[b]));
+        readFully(in, block, index.offsets[b]);
+        block.flip();
+
+        CRC32C crc = new CRC32C();
+        crc.update(block.duplicate());
+        if ((int) crc.getValue() != index.checksums[b]) throw new IOException("Block " + b + " does not match its checksum");
+        return block;
+    }
+
+    // Decodes block b of the encoded file, with table null for raw blocks
+    private static byte[] decodeBlock(FileChannel in, DecodeTable table, Index index, int b) throws IOException {
+        ByteBuffer block = readBlock(in, index, b);
+        int length = blockLength(b, index.blockSize, index.length);
+        if (index.blockTables[b] == RAW_BLOCK) {
+            if (block.remaining() != length) throw new IOException("Raw block " + b + " has the wrong length");
+            return block.array();
+        }
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream(length);
+        BitReader bits = new BitReader(block);
+        long bitLength = 8L * block.remaining();
+        if (bitLength > 0) bitLength -= bits.skipPadding();
+        table.decode(bits, bitLength, decoded);
+        if (decoded.size() != length) throw new IOException("Block " + b + " decoded to the wrong length");
+        return decoded.toByteArray();
+    }
+
+    // The header and index of an encoded file, checked against their checksum
+    private static class Index {
+        private static final int FIXED_HEADER_SIZE = 28; // magic through table count
+
+        final int blockSize;
+        final long length;
+        final CodeTable[] tables;
+        final int[] blockTables;
+        final long[] offsets;
+        final int[] checksums;
+
+        Index(FileChannel in, String encodedFile) throws IOException {
+            in.position(0);
+            CRC32C crc = new CRC32C();
+            DataInputStream header = new DataInputStream(new CheckedInputStream(
+                    new BufferedInputStream(Channels.newInputStream(in)), crc));
+            if (header.readInt() != MAGIC) throw new IOException(encodedFile + " is not a block encoded file");
+            if (header.readInt() != VERSION) throw new IOException(encodedFile + " was written by another version");
+            blockSize = header.readInt();
+            length = header.readLong();
+            int blockCount = header.readInt();
+            int tableCount = header.readInt();
+            // Check the counts before allocating anything by them, every block takes 16 bytes of index
+            if (blockSize <= 0 || length < 0 || blockCount < 0 || blockCount != (length + blockSize - 1) / blockSize
+                    || 16L * blockCount > in.size() || tableCount < 0 || tableCount > blockCount + 1) {
+                throw new IOException("Corrupt header in " + encodedFile);
+            }
+
+            long headerSize = FIXED_HEADER_SIZE;
+            tables = new CodeTable[tableCount];
+            for (int i = 0; i < tables.length; i++) {
+                tables[i] = CodeTable.readHeader(header);
+                headerSize += tables[i].headerSize();
+            }
+            blockTables = new int[blockCount];
+            for (int b = 0; b < blockCount; b++) blockTables[b] = header.readInt();
+            offsets = new long[blockCount + 1];
+            for (int i = 0; i < offsets.length; i++) offsets[i] = header.readLong();
+            checksums = new int[blockCount];
+            for (int b = 0; b < blockCount; b++) checksums[b] = header.readInt();
+            int expected = (int) crc.getValue();
+            if (header.readInt() != expected) throw new IOException("Header of " + encodedFile + " does not match its checksum");
+
+            // The checksum matched, but a file from a buggy writer must not send reads out of bounds either
+            headerSize += 4L * blockCount + 8L * offsets.length + 4L * checksums.length + 4;
+            if (offsets[0] != headerSize) throw new IOException("Corrupt block index");
+            for (int b = 0; b < blockCount; b++) {
+                if (blockTables[b] < RAW_BLOCK || blockTables[b] >= tables.length) throw new IOException("Corrupt block table index");
+                if (offsets[b + 1] < offsets[b] || offsets[b + 1] - offsets[b] > blockSize) throw new IOException("Corrupt block index");
+            }
+            if (offsets[blockCount] != in.size()) throw new IOException(encodedFile + " is truncated or has extra bytes");
+        }
+    }
+
+    // Counts blocks [from, to), splitting the range in half until it is a single block
+    private static class CountTask extends RecursiveTask<long[][]> {
+        private static final long serialVersionUID = 1L;
+
+        private final FileChannel in;
+        private final int blockSize;
+        private final long length;
+        private final int from, to;
+
+        CountTask(FileChannel in, int blockSize, long length, int from, int to) {
+            this.in = in;
+            this.blockSize = blockSize;
+            this.length = length;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected long[][] compute() {
+            long[][] counts = new long[to - from][];
+            if (to - from == 1) {
+                ByteBuffer block = ByteBuffer.allocate(blockLength(from, blockSize, length));
+                try {
+                    readFully(in, block, (long) from * blockSize);
+                }
+                catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+                block.flip();
+                counts[0] = new long[HuffmanCoding.ALPHABET_SIZE];
+                FrequencyCounter.count(block, counts[0]);
+            }
+            else if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                CountTask left = new CountTask(in, blockSize, length, from, middle);
+                left.fork();
+                long[][] right = new CountTask(in, blockSize, length, middle, to).compute();
+                long[][] leftCounts = left.join();
+                System.arraycopy(leftCounts, 0, counts, 0, leftCounts.length);
+                System.arraycopy(right, 0, counts, leftCounts.length, right.length);
+            }
+            return counts;
+        }
+    }
+
+    // Waits for a task, rethrowing the IOException it failed with instead of the wrapper join adds
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
+        try {
+            return task.join();
+        }
+        catch (RuntimeException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) throw (IOException) cause;
+            }
+            throw e;
+        }
+    }
+
+    private static long total(long[] counts) {
+        long total = 0;
+        for (long count : counts) total += count;
+        return total;
+    }
+
+    private static int blockLength(int block, int blockSize, long length) {
+        return (int) Math.min(blockSize, length - (long) block * blockSize);
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int n = in.read(buffer, position);
+            if (n == -1) throw new IOException("Unexpected end of file");
+            position += n;
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += out.write(buffer, position);
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package huffman;
+
+import java.util.Arrays;
+
+/**
+ * This class works out huffman codeword lengths straight from symbol counts,
+ * for callers that only need a CodeTable and not the TreeNode tree. huffman uses
+ * HuffmanTree, the same builder as makeTree. limited uses
+ * package-merge to find the best code whose codewords are at most a given length.
+ */
+public class CodeLengths {
+
+    // Only static helpers, don't instantiate
+    private CodeLengths() { }
+
+    /**
+     * Returns the huffman codeword length of every symbol
+     *
+     * @param counts How many times each symbol appears
+     * @return The codeword length of every symbol, 0 for symbols that never appear.
+     *         A lone symbol gets length 1, like the extra character makeSortedList adds.
+     */
+    public static int[] huffman(long[] counts) {
+        int[] lengths = new int[counts.length];
+
+        // Sort the symbols that appear by count, then by symbol, like CharFreq does
+        long[] keys = new long[counts.length];
+        int n = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) keys[n++] = (counts[i] << 9) | i;
+        }
+        if (n == 0) return lengths;
+        if (n == 1) {
+            lengths[(int) (keys[0] & 511)] = 1;
+            return lengths;
+        }
+        Arrays.sort(keys, 0, n);
+
+        long[] weights = new long[n];
+        for (int i = 0; i < n; i++) weights[i] = keys[i] >>> 9;
+        int[] depths = new HuffmanTree(weights).depths();
+        for (int i = 0; i < n; i++) lengths[(int) (keys[i] & 511)] = depths[i];
+        return lengths;
+    }
+
+    /**
+     * Returns the codeword length of every symbol in the best prefix code with no
+     * codeword longer than maxLength
+     *
+     * @param counts How many times each symbol appears
+     * @param maxLength The longest codeword allowed
+     * @return The codeword length of every symbol, 0 for symbols that never appear
+     */
+    public static int[] limited(long[] counts, int maxLength) {
+        int[] lengths = new int[counts.length];
+
+        long[] keys = new long[counts.length];
+        int n = 0;
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0) keys[n++] = (counts[i] << 9) | i;
+        }
+        Arrays.sort(keys, 0, n);
+
+        long[] weights = new long[n];
+        for (int i = 0; i < n; i++) weights[i] = keys[i] >>> 9;
+        int[] sortedLengths = packageMerge(weights, maxLength);
+        for (int i = 0; i < n; i++) lengths[(int) (keys[i] & 511)] = sortedLengths[i];
+        return lengths;
+    }
+
+    /**
+     * Runs package-merge on weights sorted in increasing order. Every level from
+     * maxLength up to 1 pairs up the previous level's items into packages and merges
+     * them with the leaves, and a leaf's length is how many times it is in the first
+     * 2n-2 items of the last level.
+     *
+     * @param weights The sorted weights of the symbols
+     * @param maxLength The longest codeword allowed
+     * @return The codeword length of every weight, in the same order
+     */
+    public static int[] packageMerge(long[] weights, int maxLength) {
+        int n = weights.length;
+        int[] lengths = new int[n];
+        if (n == 0) return lengths;
+        if (n == 1) {
+            lengths[0] = 1;
+            return lengths;
+        }
+        if (maxLength < 1 || (maxLength < 63 && (1L << maxLength) < n)) {
+            throw new IllegalArgumentException(n + " symbols do not fit in codewords of " + maxLength + " bits");
+        }
+
+        // Items 0..n-1 are the leaves, later items are packages of two earlier items
+        int capacity = n + maxLength * n;
+        long[] weight = new long[capacity];
+        int[] first = new int[capacity];
+        int[] second = new int[capacity];
+        System.arraycopy(weights, 0, weight, 0, n);
+        int items = n;
+
+        int[] level = new int[2 * n];
+        int[] packages = new int[n];
+        int packageCount = 0;
+        for (int l = maxLength; l >= 1; l--) {
+            // Merge the leaves with the previous level's packages, leaves first on ties
+            int size = 0, leaf = 0, pack = 0;
+            while (leaf < n || pack < packageCount) {
+                if (pack == packageCount || (leaf < n && weight[leaf] <= weight[packages[pack]])) level[size++] = leaf++;
+                else level[size++] = packages[pack++];
+            }
+            if (l == 1) {
+                for (int i = 0; i < 2 * n - 2; i++) countLeaves(level[i], n, first, second, lengths);
+                break;
+            }
+
+            // Pair up the merged items into the packages of the next level
+            packageCount = size / 2;
+            for (int i = 0; i < packageCount; i++) {
+                weight[items] = weight[level[2 * i]] + weight[level[2 * i + 1]];
+                first[items] = level[2 * i];
+                second[items] = level[2 * i + 1];
+                packages[i] = items++;
+            }
+        }
+        return lengths;
+    }
+
+    // Adds one to the length of every leaf inside item
+    private static void countLeaves(int item, int n, int[] first, int[] second, int[] lengths) {
+        while (item >= n) {
+            countLeaves(first[item], n, first, second, lengths);
+            item = second[item];
+        }
+        lengths[item]++;
+    }
+}
@@ -0,0 +1,221 @@
+package huffman;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * This class holds every symbol's codeword as a (bits, length) pair, so that
+ * encoding can append whole codewords to a BitWriter instead of concatenating
+ * Strings of 1's and 0's
+ */
+public class CodeTable {
+    public static final int HEADER_MAGIC = 0x4843; // "HC", starts a code length header
+
+    private final long[] codes;  // codeword bits, right aligned
+    private final int[] lengths; // codeword lengths, 0 if the symbol has no codeword
+
+    /**
+     * Copies the given codewords, so the table never changes once it is built and
+     * can be shared between threads
+     *
+     * @param codes The codeword bits of every symbol, right aligned
+     * @param lengths The codeword length of every symbol, 0 if it has none
+     */
+    public CodeTable(long[] codes, int[] lengths) {
+        this.codes = codes.clone();
+        this.lengths = lengths.clone();
+    }
+
+    /**
+     * Builds a table out of the bitstring encodings made by makeEncodings
+     *
+     * @param encodings The bitstring of every symbol, null if it has none
+     * @return The equivalent table of codewords
+     */
+    public static CodeTable fromEncodings(String[] encodings) {
+        long[] codes = new long[encodings.length];
+        int[] lengths = new int[encodings.length];
+
+        for (int i = 0; i < encodings.length; i++) {
+            if (encodings[i] == null) continue;
+            if (encodings[i].length() > 64) {
+                throw new IllegalArgumentException("Encoding of symbol " + i + " is longer than 64 bits");
+            }
+            for (int j = 0; j < encodings[i].length(); j++) {
+                codes[i] = (codes[i] << 1) | (encodings[i].charAt(j) == '1' ? 1 : 0);
+            }
+            lengths[i] = encodings[i].length();
+        }
+        return new CodeTable(codes, lengths);
+    }
+
+    /**
+     * Builds the canonical code with the given codeword lengths. Shorter codewords come
+     * first, and codewords of the same length are consecutive in symbol order, so the
+     * lengths alone are enough to rebuild the code.
+     *
+     * @param lengths The codeword length of every symbol, 0 if it has none
+     * @return The canonical table
+     */
+    public static CodeTable canonical(int[] lengths) {
+        int maxLength = 0;
+        for (int length : lengths) maxLength = Math.max(maxLength, length);
+        if (maxLength > 64) throw new IllegalArgumentException("Codeword lengths are longer than 64 bits");
+
+        // Count the codewords of every length, then find the first codeword of every length
+        long[] lengthCount = new long[maxLength + 1];
+        for (int length : lengths) if (length > 0) lengthCount[length]++;
+        long[] nextCode = new long[maxLength + 1];
+        for (int length = 1; length <= maxLength; length++) {
+            nextCode[length] = (nextCode[length - 1] + lengthCount[length - 1]) << 1;
+        }
+        nextCode[0] = 0;
+
+        long[] codes = new long[lengths.length];
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] > 0) codes[i] = nextCode[lengths[i]]++;
+        }
+        return new CodeTable(codes, lengths);
+    }
+
+    /**
+     * Builds a table out of a huffman coding tree, where going left appends a 0
+     * and going right appends a 1
+     *
+     * @param root The root of the tree
+     * @param size One more than the largest character in the tree
+     * @return The table of codewords of the tree's leaves
+     */
+    public static CodeTable fromTree(TreeNode root, int size) {
+        CodeTable table = new CodeTable(new long[size], new int[size]);
+        if (root != null) table.addLeaves(root, 0, 0);
+        return table;
+    }
+
+    private void addLeaves(TreeNode node, long code, int length) {
+        if (node.getLeft() == null && node.getRight() == null) {
+            if (length > 64) throw new IllegalArgumentException("Huffman tree is deeper than 64 levels");
+            codes[node.getData().getCharacter()] = code;
+            lengths[node.getData().getCharacter()] = length;
+            return;
+        }
+        if (node.getLeft() != null) addLeaves(node.getLeft(), code << 1, length + 1);
+        if (node.getRight() != null) addLeaves(node.getRight(), (code << 1) | 1, length + 1);
+    }
+
+    /**
+     * Returns the number of bits it takes to encode a text with the given
+     * symbol counts, not including padding
+     *
+     * @param counts How many times each symbol appears
+     */
+    public long encodedLength(long[] counts) {
+        long bits = 0;
+        for (int i = 0; i < counts.length && i < lengths.length; i++) {
+            bits += counts[i] * lengths[i];
+        }
+        return bits;
+    }
+
+    /**
+     * Returns whether every symbol with a count above 0 has a codeword
+     *
+     * @param counts How many times each symbol appears
+     */
+    public boolean covers(long[] counts) {
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0 && (i >= lengths.length || lengths[i] == 0)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Writes the codeword of every remaining byte in buffer, and leaves the
+     * buffer fully consumed
+     *
+     * @param buffer The bytes to encode, from position to limit
+     * @param out Where to write the codewords
+     */
+    public void encode(ByteBuffer buffer, BitWriter out) throws IOException {
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            int symbol = buffer.get(i) & 0xFF;
+            out.write(codes[symbol], lengths[symbol]);
+        }
+        buffer.position(buffer.limit());
+    }
+
+    /**
+     * Writes the codeword lengths as a compact header: the magic number, the table size,
+     * a bitmap of which symbols have a codeword, and one length byte per such symbol
+     *
+     * @param out Where to write the header
+     */
+    public void writeHeader(DataOutput out) throws IOException {
+        out.writeShort(HEADER_MAGIC);
+        out.writeShort(lengths.length);
+
+        byte[] present = new byte[(lengths.length + 7) / 8];
+        for (int i = 0; i < lengths.length; i++) {
+            if (lengths[i] > 0) present[i >>> 3] |= 1 << (i & 7);
+        }
+        out.write(present);
+        for (int length : lengths) {
+            if (length > 0) out.writeByte(length);
+        }
+    }
+
+    /**
+     * Returns the number of bytes writeHeader writes for this table
+     */
+    public int headerSize() {
+        int size = 4 + (lengths.length + 7) / 8;
+        for (int length : lengths) {
+            if (length > 0) size++;
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of bytes writeHeader writes for a table that has a codeword
+     * for every symbol in counts, without building the table
+     *
+     * @param counts How many times each symbol appears
+     */
+    public static int headerSize(long[] counts) {
+        int size = 4 + (counts.length + 7) / 8;
+        for (long count : counts) {
+            if (count > 0) size++;
+        }
+        return size;
+    }
+
+    /**
+     * Reads a header written by writeHeader and rebuilds its canonical table
+     *
+     * @param in Where to read the header from
+     * @return The canonical table with the stored lengths
+     */
+    public static CodeTable readHeader(DataInput in) throws IOException {
+        if (in.readUnsignedShort() != HEADER_MAGIC) throw new IOException("Missing code length header");
+        int[] lengths = new int[in.readUnsignedShort()];
+
+        byte[] present = new byte[(lengths.length + 7) / 8];
+        in.readFully(present);
+
+        double kraft = 0; // a valid prefix code never sums 2^-length over 1
+        for (int i = 0; i < lengths.length; i++) {
+            if ((present[i >>> 3] & (1 << (i & 7))) == 0) continue;
+            lengths[i] = in.readUnsignedByte();
+            if (lengths[i] == 0 || lengths[i] > 64) throw new IOException("Corrupt code length header");
+            kraft += Math.scalb(1.0, -lengths[i]);
+        }
+        if (kraft > 1.0) throw new IOException("Corrupt code length header");
+        return canonical(lengths);
+    }
+
+    public int size() { return lengths.length; }
+    public long getCode(int symbol) { return codes[symbol]; }
+    public int getLength(int symbol) { return lengths[symbol]; }
+}
@@ -0,0 +1,199 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class compresses files with order-1 huffman codes: every byte is encoded
+ * with a code made for the byte before it, since in English text which letters
+ * come next depends a lot on the last one (q is almost always followed by u).
+ * Contexts seen too rarely to pay for their own header use the order-0 code of
+ * the whole file instead. Every code is limited to DecodeTable.MAX_ROOT_BITS,
+ * so decoding is one table probe per byte, like order-0.
+ *
+ * Encoded file layout:
+ * - int magic, long original length
+ * - the order-0 code as a code length header (CodeTable.writeHeader)
+ * - a 32 byte bitmap of which contexts have their own code, then each of their headers
+ * - the bits in the format of writeBitString, the first byte using context 0
+ */
+public class ContextCoding {
+    public static final int MAGIC = 0x4855464F; // "HUFO"
+    private static final int CONTEXTS = HuffmanCoding.ALPHABET_SIZE;
+    private static final int BUFFER_SIZE = 1 << 16; // 64 KB per read
+
+    // Only static helpers, don't instantiate
+    private ContextCoding() { }
+
+    /**
+     * Encodes inputFile into encodedFile with a code per preceding byte
+     *
+     * @param inputFile The file to encode
+     * @param encodedFile The file to write (doesn't need to exist yet)
+     */
+    public static void encode(String inputFile, String encodedFile) throws IOException {
+        // One pass for the order-1 histogram, indexed by (previous byte << 8 | byte)
+        long[] pairCounts = new long[CONTEXTS * CONTEXTS];
+        long length = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        try (FileChannel in = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ)) {
+            int previous = 0;
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    int symbol = buffer.get() & 0xFF;
+                    pairCounts[previous << 8 | symbol]++;
+                    previous = symbol;
+                }
+                length += buffer.limit();
+                buffer.clear();
+            }
+        }
+
+        CodeTable[] tables = chooseTables(pairCounts);
+        CodeTable order0 = tables[CONTEXTS];
+
+        // Flatten the codes the same way as the histogram, so the loop below does one lookup per byte
+        long[] codes = new long[pairCounts.length];
+        int[] lengths = new int[pairCounts.length];
+        long bitLength = 0;
+        for (int i = 0; i < pairCounts.length; i++) {
+            CodeTable table = tables[i >>> 8];
+            codes[i] = table.getCode(i & 0xFF);
+            lengths[i] = table.getLength(i & 0xFF);
+            bitLength += pairCounts[i] * lengths[i];
+        }
+
+        try (FileChannel in = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ);
+             OutputStream file = new FileOutputStream(encodedFile)) {
+            DataOutputStream header = new DataOutputStream(new BufferedOutputStream(file));
+            header.writeInt(MAGIC);
+            header.writeLong(length);
+            order0.writeHeader(header);
+            byte[] ownTable = new byte[CONTEXTS / 8];
+            for (int c = 0; c < CONTEXTS; c++) {
+                if (tables[c] != order0) ownTable[c >>> 3] |= 1 << (c & 7);
+            }
+            header.write(ownTable);
+            for (int c = 0; c < CONTEXTS; c++) {
+                if (tables[c] != order0) tables[c].writeHeader(header);
+            }
+            header.flush();
+
+            BitWriter out = new BitWriter(file);
+            out.writePadding(bitLength);
+            int previous = 0;
+            while (in.read(buffer) != -1) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    int pair = previous << 8 | (buffer.get() & 0xFF);
+                    out.write(codes[pair], lengths[pair]);
+                    previous = pair & 0xFF;
+                }
+                buffer.clear();
+            }
+            out.flush();
+        }
+    }
+
+    // Returns the code of every context, then the order-0 code, which contexts share
+    // when their own code would not save more than its header costs
+    private static CodeTable[] chooseTables(long[] pairCounts) {
+        long[] totals = new long[CONTEXTS];
+        for (int i = 0; i < pairCounts.length; i++) totals[i & 0xFF] += pairCounts[i];
+
+        CodeTable[] tables = new CodeTable[CONTEXTS + 1];
+        CodeTable order0 = CodeTable.canonical(CodeLengths.limited(totals, DecodeTable.MAX_ROOT_BITS));
+        tables[CONTEXTS] = order0;
+
+        long[] counts = new long[CONTEXTS];
+        for (int c = 0; c < CONTEXTS; c++) {
+            boolean seen = false;
+            for (int s = 0; s < CONTEXTS; s++) {
+                counts[s] = pairCounts[c << 8 | s];
+                seen |= counts[s] > 0;
+            }
+            tables[c] = order0;
+            if (!seen) continue;
+
+            CodeTable table = CodeTable.canonical(CodeLengths.limited(counts, DecodeTable.MAX_ROOT_BITS));
+            if (table.encodedLength(counts) + 8L * table.headerSize() < order0.encodedLength(counts)) {
+                tables[c] = table;
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Decodes a file written by encode into decodedFile
+     *
+     * @param encodedFile The file which has already been encoded by encode()
+     * @param decodedFile The name of the new file we want to decode into
+     */
+    public static void decode(String encodedFile, String decodedFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(encodedFile), BUFFER_SIZE));
+             OutputStream out = new FileOutputStream(decodedFile)) {
+            if (in.readInt() != MAGIC) throw new IOException(encodedFile + " is not an order-1 encoded file");
+            long length = in.readLong();
+            if (length < 0) throw new IOException("Corrupt header in " + encodedFile);
+
+            CodeTable order0 = readTable(in);
+            long headerSize = 12 + order0.headerSize() + CONTEXTS / 8;
+            byte[] ownTable = new byte[CONTEXTS / 8];
+            in.readFully(ownTable);
+            DecodeTable[] tables = new DecodeTable[CONTEXTS];
+            DecodeTable order0Table = new DecodeTable(order0);
+            for (int c = 0; c < CONTEXTS; c++) {
+                boolean own = (ownTable[c >>> 3] & (1 << (c & 7))) != 0;
+                if (own) {
+                    CodeTable table = readTable(in);
+                    headerSize += table.headerSize();
+                    tables[c] = new DecodeTable(table);
+                }
+                else {
+                    tables[c] = order0Table;
+                }
+            }
+
+            // The bits run to the end of the file, and BitReader reads zeroes past it,
+            // so a short file only shows as having read more bits than there are
+            long bitLength = 8 * (Files.size(Paths.get(encodedFile)) - headerSize);
+            BitReader bits = new BitReader(Channels.newChannel(in));
+            if (length > 0) bits.skipPadding();
+
+            // Every symbol picks the table for the next one
+            byte[] output = new byte[BUFFER_SIZE];
+            int outputIndex = 0;
+            int previous = 0;
+            for (long i = 0; i < length; i++) {
+                previous = tables[previous].decodeSymbol(bits);
+                output[outputIndex++] = (byte) previous;
+                if (outputIndex == BUFFER_SIZE) {
+                    if (bits.getBitsRead() > bitLength) throw new IOException(encodedFile + " is truncated");
+                    out.write(output, 0, outputIndex);
+                    outputIndex = 0;
+                }
+            }
+            if (bits.getBitsRead() > bitLength) throw new IOException(encodedFile + " is truncated");
+            out.write(output, 0, outputIndex);
+        }
+    }
+
+    private static CodeTable readTable(DataInputStream in) throws IOException {
+        CodeTable table = CodeTable.readHeader(in);
+        if (table.size() > CONTEXTS) throw new IOException("Corrupt code length header");
+        return table;
+    }
+}
@@ -0,0 +1,179 @@
+package huffman;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * This class decodes a prefix code with lookup tables instead of walking the
+ * tree one bit at a time. The root table is indexed by the next ROOT_BITS bits
+ * and gives the symbol and codeword length directly. Longer codewords continue
+ * in smaller second level tables, so memory stays proportional to the code.
+ * Codes no longer than MAX_ROOT_BITS (like length limited ones) get a root table
+ * wide enough for every codeword, so each symbol takes exactly one probe.
+ * The tables never change once built, so threads can share one DecodeTable.
+ */
+public class DecodeTable {
+    public static final int ROOT_BITS = 11;     // bits looked at per probe
+    public static final int MAX_ROOT_BITS = 15; // widest root table, 32K entries
+    private static final int OUTPUT_SIZE = 1 << 16; // 64 KB output buffer
+
+    // Entries >= 0 are (symbol << 8 | codeword length), where length 0 means the bits
+    // match no codeword. Entries < 0 are ~(subtable offset << 4 | subtable bits).
+    private int[] table;
+    private int tableSize;
+    private final int rootBits;
+
+    // Temporary binary trie of the codewords, only used while building the tables
+    private int[] zero, one, symbol, height;
+    private int nodes;
+
+    /**
+     * Builds the lookup tables for the codewords of table
+     *
+     * @param codes The codewords to decode, which must form a prefix code
+     */
+    public DecodeTable(CodeTable codes) {
+        int maxNodes = 1;
+        for (int i = 0; i < codes.size(); i++) maxNodes += codes.getLength(i);
+        zero = new int[maxNodes];
+        one = new int[maxNodes];
+        symbol = new int[maxNodes];
+        height = new int[maxNodes];
+        nodes = 1;
+        zero[0] = one[0] = symbol[0] = -1;
+
+        for (int i = 0; i < codes.size(); i++) {
+            if (codes.getLength(i) > 0) insert(i, codes.getCode(i), codes.getLength(i));
+        }
+        measure(0);
+
+        rootBits = Math.max(1, height[0] <= MAX_ROOT_BITS ? height[0] : ROOT_BITS);
+        table = new int[1 << rootBits];
+        build(0, rootBits);
+        table = Arrays.copyOf(table, tableSize);
+        zero = one = symbol = height = null;
+    }
+
+    /**
+     * Decodes bitLength bits from in, and writes the decoded symbols to out.
+     * Stops early after the EOF symbol, which is not written.
+     *
+     * @param in Where to read the codewords from
+     * @param bitLength The number of bits to decode
+     * @param out Where to write the decoded symbols, one byte each
+     * @return The number of symbols decoded
+     */
+    public long decode(BitReader in, long bitLength, OutputStream out) throws IOException {
+        return decode(in, bitLength, out, new byte[OUTPUT_SIZE]);
+    }
+
+    /**
+     * Same as decode, collecting decoded symbols in the given array before writing them
+     * to out, for callers that reuse one array across many calls
+     *
+     * @param output The array to collect symbols in, of any size above 0
+     */
+    public long decode(BitReader in, long bitLength, OutputStream out, byte[] output) throws IOException {
+        int outputIndex = 0;
+        long symbols = 0;
+        long end = in.getBitsRead() + bitLength;
+
+        while (in.getBitsRead() < end) {
+            int bits = rootBits;
+            int entry = table[in.peek(bits)];
+            while (entry < 0) { // codeword continues in a subtable
+                in.skip(bits);
+                bits = ~entry & 15;
+                entry = table[(~entry >>> 4) + in.peek(bits)];
+            }
+
+            int length = entry & 0xFF;
+            if (length == 0 || in.getBitsRead() + length > end) {
+                throw new IOException("Encoded bits do not match any codeword");
+            }
+            in.skip(length);
+            if ((entry >>> 8) == HuffmanCoding.EOF) break;
+
+            output[outputIndex++] = (byte) (entry >>> 8);
+            if (outputIndex == output.length) {
+                out.write(output, 0, outputIndex);
+                outputIndex = 0;
+            }
+            symbols++;
+        }
+        out.write(output, 0, outputIndex);
+        return symbols;
+    }
+
+    /**
+     * Decodes one symbol from in, for callers that switch tables between symbols
+     *
+     * @param in Where to read the codeword from
+     * @return The decoded symbol
+     */
+    public int decodeSymbol(BitReader in) throws IOException {
+        int bits = rootBits;
+        int entry = table[in.peek(bits)];
+        while (entry < 0) { // codeword continues in a subtable
+            in.skip(bits);
+            bits = ~entry & 15;
+            entry = table[(~entry >>> 4) + in.peek(bits)];
+        }
+        if ((entry & 0xFF) == 0) throw new IOException("Encoded bits do not match any codeword");
+        in.skip(entry & 0xFF);
+        return entry >>> 8;
+    }
+
+    // Adds the path for one codeword to the trie
+    private void insert(int s, long code, int length) {
+        int node = 0;
+        for (int i = length - 1; i >= 0; i--) {
+            if (symbol[node] >= 0) throw new IllegalArgumentException("Codewords are not a prefix code");
+            int[] children = ((code >>> i) & 1) == 0 ? zero : one;
+            if (children[node] == -1) {
+                children[node] = nodes;
+                zero[nodes] = one[nodes] = symbol[nodes] = -1;
+                nodes++;
+            }
+            node = children[node];
+        }
+        if (symbol[node] >= 0 || zero[node] != -1 || one[node] != -1) {
+            throw new IllegalArgumentException("Codewords are not a prefix code");
+        }
+        symbol[node] = s;
+    }
+
+    // Sets the height of every node under node, leaves having height 0
+    private int measure(int node) {
+        if (node == -1) return 0;
+        if (symbol[node] >= 0) return height[node] = 0;
+        return height[node] = 1 + Math.max(measure(zero[node]), measure(one[node]));
+    }
+
+    // Adds a table of 2^bits entries for the codewords below node, returning its offset
+    private int build(int node, int bits) {
+        int offset = tableSize;
+        tableSize += 1 << bits;
+        if (tableSize > table.length) table = Arrays.copyOf(table, Math.max(tableSize, table.length * 2));
+        fill(node, 0, 0, offset, bits);
+        return offset;
+    }
+
+    private void fill(int node, int depth, int prefix, int offset, int bits) {
+        if (node == -1) return; // no codeword starts with these bits
+        if (symbol[node] >= 0) {
+            int start = offset + (prefix << (bits - depth));
+            Arrays.fill(table, start, start + (1 << (bits - depth)), (symbol[node] << 8) | depth);
+        }
+        else if (depth == bits) {
+            int subBits = Math.min(ROOT_BITS, height[node]);
+            int subOffset = build(node, subBits);
+            table[offset + prefix] = ~((subOffset << 4) | subBits);
+        }
+        else {
+            fill(zero[node], depth + 1, prefix << 1, offset, bits);
+            fill(one[node], depth + 1, (prefix << 1) | 1, offset, bits);
+        }
+    }
+}
@@ -0,0 +1,56 @@
+package huffman;
+
+/**
+ * This class estimates how well a histogram compresses before any code is built.
+ * No prefix code can average fewer bits per symbol than the Shannon entropy of the
+ * counts, and a huffman code averages less than one bit more, so a block whose
+ * entropy is already close to 8 bits per byte is cheaper to store raw.
+ */
+public class Entropy {
+
+    // Only static helpers, don't instantiate
+    private Entropy() { }
+
+    /**
+     * Returns the Shannon entropy of the counts, in bits per symbol
+     *
+     * @param counts How many times each symbol appears
+     */
+    public static double bitsPerSymbol(long[] counts) {
+        long total = 0;
+        double sum = 0; // sum of count * log2(count)
+        for (long count : counts) {
+            if (count > 0) {
+                total += count;
+                sum += count * Math.log(count);
+            }
+        }
+        if (total == 0) return 0;
+        return (Math.log(total) - sum / total) / Math.log(2);
+    }
+
+    /**
+     * Returns the fewest bits any prefix code could encode the counts in, not
+     * including its header. A huffman code takes at most one bit per symbol more.
+     *
+     * @param counts How many times each symbol appears
+     */
+    public static long expectedBits(long[] counts) {
+        long total = 0;
+        for (long count : counts) total += count;
+        return (long) Math.ceil(total * bitsPerSymbol(counts));
+    }
+
+    /**
+     * Returns whether no code could make the counted bytes smaller than storing them
+     * as they are, even with a header of only overheadBits
+     *
+     * @param counts How many times each byte appears
+     * @param overheadBits The least a code costs on top of its codewords, like its header
+     */
+    public static boolean storeRaw(long[] counts, long overheadBits) {
+        long total = 0;
+        for (long count : counts) total += count;
+        return expectedBits(counts) + overheadBits >= 8 * total;
+    }
+}
@@ -0,0 +1,122 @@
+package huffman;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * This class counts how many times each byte value appears in a file. It reads
+ * the file in large chunks through a FileChannel instead of one char at a time
+ * through StdIn, which resets the Scanner delimiter twice for every char.
+ *
+ * Counting a run of the same byte with one histogram makes every increment wait
+ * for the store of the one before it. The counting kernel spreads consecutive
+ * bytes over SUB_HISTOGRAMS separate histograms, so those increments don't depend
+ * on each other, and adds them up at the end.
+ *
+ * Histograms are longs, since a file over 2 GB can have one byte value more than
+ * Integer.MAX_VALUE times.
+ */
+public class FrequencyCounter {
+    private static final int BUFFER_SIZE = 1 << 16; // 64 KB per read
+    private static final int SUB_HISTOGRAMS = 4;
+    private static final int MIN_INTERLEAVED = 1 << 12; // smaller buffers aren't worth merging histograms for
+
+    // Only static helpers, don't instantiate
+    private FrequencyCounter() { }
+
+    /**
+     * Adds the number of occurrences of every byte in the given file to counts,
+     * indexed by the byte's unsigned value
+     *
+     * @param filename The file to count
+     * @param counts The histogram to add to
+     * @return The total number of bytes read
+     */
+    public static long count(String filename, long[] counts) {
+        long total = 0;
+        ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            while (channel.read(buffer) != -1) {
+                buffer.flip();
+                total += count(buffer, counts);
+                buffer.clear();
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Could not open " + filename);
+        }
+        return total;
+    }
+
+    /**
+     * Like count, but reads the file through memory mapped windows instead of
+     * copying it into a buffer
+     *
+     * @param filename The file to count
+     * @param counts The histogram to add to
+     * @param windowSize The most bytes to map at once
+     * @return The total number of bytes read
+     */
+    public static long countMapped(String filename, long[] counts, long windowSize) {
+        long total = 0;
+
+        try (FileChannel channel = FileChannel.open(Paths.get(filename), StandardOpenOption.READ)) {
+            MappedFile mapped = new MappedFile(channel, 0, windowSize);
+            for (ByteBuffer window = mapped.next(); window != null; window = mapped.next()) {
+                total += count(window, counts);
+            }
+        }
+        catch (IOException e) {
+            System.err.println("Could not open " + filename);
+        }
+        return total;
+    }
+
+    /**
+     * Adds the occurrences of every remaining byte in buffer to counts, and
+     * leaves the buffer fully consumed
+     *
+     * @param buffer The bytes to count, from position to limit
+     * @param counts The histogram to add to
+     * @return The number of bytes counted
+     */
+    public static int count(ByteBuffer buffer, long[] counts) {
+        int n = buffer.remaining();
+        if (n < MIN_INTERLEAVED) return countNaive(buffer, counts);
+
+        // Read 8 bytes at a time, byte k of every word going to histogram k % 4
+        int[] sub = new int[SUB_HISTOGRAMS << 8];
+        int i = buffer.position();
+        int end = i + (n & ~7);
+        for (; i < end; i += 8) {
+            long word = buffer.getLong(i);
+            sub[(int) word & 0xFF]++;
+            sub[256 | (int) (word >>> 8) & 0xFF]++;
+            sub[512 | (int) (word >>> 16) & 0xFF]++;
+            sub[768 | (int) (word >>> 24) & 0xFF]++;
+            sub[(int) (word >>> 32) & 0xFF]++;
+            sub[256 | (int) (word >>> 40) & 0xFF]++;
+            sub[512 | (int) (word >>> 48) & 0xFF]++;
+            sub[768 | (int) (word >>> 56)]++;
+        }
+        for (; i < buffer.limit(); i++) sub[buffer.get(i) & 0xFF]++;
+
+        for (int v = 0; v < 256; v++) counts[v] += (long) sub[v] + sub[256 | v] + sub[512 | v] + sub[768 | v];
+        buffer.position(buffer.limit());
+        return n;
+    }
+
+    // Counts with a single histogram, one byte at a time
+    static int countNaive(ByteBuffer buffer, long[] counts) {
+        int n = buffer.remaining();
+        for (int i = buffer.position(); i < buffer.limit(); i++) {
+            counts[buffer.get(i) & 0xFF]++;
+        }
+        buffer.position(buffer.limit());
+        return n;
+    }
+}
@@ -0,0 +1,198 @@
+package huffman;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * This class benchmarks every step of the huffman coding process separately and
+ * end to end, on synthetic corpora (uniform, Zipfian and a single repeated symbol,
+ * the edge case makeSortedList pads) and on the input*.txt files scaled up.
+ * For every step it prints the throughput in MB of input per second and how much
+ * the step allocates, measured per thread like a GC allocation profiler would.
+ * It also compares FrequencyCounter's interleaved counting kernel with the naive
+ * single histogram loop.
+ *
+ * Usage: java huffman.HuffmanBenchmark [size in MB] [iterations] [input directory]
+ */
+public class HuffmanBenchmark {
+    private static final int WARMUP = 3;
+    private static final String[] STAGES = {"makeSortedList", "makeTree", "makeEncodings", "encode", "decode", "end to end"};
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    public static void main(String[] args) throws IOException {
+        int sizeMB = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int iterations = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+        File inputDir = new File(args.length > 2 ? args[2] : ".");
+        int size = sizeMB << 20;
+
+        ArrayList<String> names = new ArrayList<>();
+        ArrayList<byte[]> corpora = new ArrayList<>();
+        names.add("uniform");
+        corpora.add(uniform(size));
+        names.add("zipf");
+        corpora.add(zipf(size));
+        names.add("single symbol");
+        corpora.add(single(size));
+
+        File[] inputs = inputDir.listFiles((dir, name) -> name.startsWith("input") && name.endsWith(".txt"));
+        if (inputs != null) {
+            Arrays.sort(inputs);
+            for (File input : inputs) {
+                byte[] text = Files.readAllBytes(input.toPath());
+                if (text.length == 0) continue; // nothing to scale up
+                names.add(input.getName());
+                corpora.add(repeat(text, size));
+            }
+        }
+
+        System.out.printf("%-16s %-17s %10s %10s %14s %14s%n", "corpus", "stage", "MB/s", "ms/op", "alloc MB/s", "alloc B/op");
+        for (int i = 0; i < corpora.size(); i++) {
+            File file = File.createTempFile("huffman", ".in");
+            File encoded = File.createTempFile("huffman", ".enc");
+            File decoded = File.createTempFile("huffman", ".dec");
+            try {
+                write(file, corpora.get(i));
+                runCounting(names.get(i), corpora.get(i), iterations);
+                for (String stage : STAGES) {
+                    run(names.get(i), stage, file, encoded, decoded, iterations);
+                }
+            }
+            finally {
+                file.delete();
+                encoded.delete();
+                decoded.delete();
+            }
+        }
+    }
+
+    // Times one stage, after running every stage before it once so its inputs are ready
+    private static void run(String corpus, String stage, File file, File encoded, File decoded, int iterations) {
+        HuffmanCoding coding = new HuffmanCoding(file.getPath());
+        if (!stage.equals("makeSortedList") && !stage.equals("end to end")) {
+            coding.makeSortedList();
+            if (!stage.equals("makeTree")) coding.makeTree();
+            if (!stage.equals("makeTree") && !stage.equals("makeEncodings")) coding.makeEncodings();
+            if (stage.equals("decode")) coding.encode(encoded.getPath());
+        }
+
+        long bestNanos = Long.MAX_VALUE, allocated = 0;
+        for (int i = 0; i < WARMUP + iterations; i++) {
+            long bytesBefore = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId());
+            long start = System.nanoTime();
+            runStage(coding, stage, encoded, decoded);
+            long nanos = System.nanoTime() - start;
+            long bytes = THREADS.getThreadAllocatedBytes(Thread.currentThread().getId()) - bytesBefore;
+            if (i >= WARMUP) {
+                bestNanos = Math.min(bestNanos, nanos);
+                allocated += bytes;
+            }
+        }
+
+        double seconds = bestNanos / 1e9;
+        double megabytes = file.length() / (double) (1 << 20);
+        long bytesPerOp = allocated / iterations;
+        System.out.printf("%-16s %-17s %10.1f %10.2f %14.1f %14d%n", corpus, stage, megabytes / seconds,
+                bestNanos / 1e6, bytesPerOp / (double) (1 << 20) / seconds, bytesPerOp);
+    }
+
+    // Times both counting kernels on the corpus in a direct buffer, like FrequencyCounter reads into
+    private static void runCounting(String corpus, byte[] data, int iterations) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data).flip();
+        long[] counts = new long[HuffmanCoding.ALPHABET_SIZE];
+
+        for (boolean naive : new boolean[] {true, false}) {
+            long bestNanos = Long.MAX_VALUE;
+            for (int i = 0; i < WARMUP + iterations; i++) {
+                buffer.rewind();
+                long start = System.nanoTime();
+                if (naive) FrequencyCounter.countNaive(buffer, counts);
+                else FrequencyCounter.count(buffer, counts);
+                long nanos = System.nanoTime() - start;
+                if (i >= WARMUP) bestNanos = Math.min(bestNanos, nanos);
+            }
+            System.out.printf("%-16s %-17s %10.1f %10.2f %14s %14s%n", corpus, naive ? "count naive" : "count interleaved",
+                    data.length / (double) (1 << 20) / (bestNanos / 1e9), bestNanos / 1e6, "-", "-");
+        }
+    }
+
+    private static void runStage(HuffmanCoding coding, String stage, File encoded, File decoded) {
+        switch (stage) {
+            case "makeSortedList":
+                coding.makeSortedList();
+                break;
+            case "makeTree":
+                coding.makeTree();
+                break;
+            case "makeEncodings":
+                coding.makeEncodings();
+                break;
+            case "encode":
+                coding.encode(encoded.getPath());
+                break;
+            case "decode":
+                coding.decode(encoded.getPath(), decoded.getPath());
+                break;
+            default:
+                coding.makeSortedList();
+                coding.makeTree();
+                coding.makeEncodings();
+                coding.encode(encoded.getPath());
+                coding.decode(encoded.getPath(), decoded.getPath());
+        }
+    }
+
+    // Every byte value equally likely
+    private static byte[] uniform(int size) {
+        byte[] data = new byte[size];
+        new Random(1).nextBytes(data);
+        return data;
+    }
+
+    // Byte value k appears with probability proportional to 1/(k+1)
+    private static byte[] zipf(int size) {
+        double[] cumulative = new double[HuffmanCoding.ALPHABET_SIZE];
+        double sum = 0;
+        for (int k = 0; k < cumulative.length; k++) {
+            sum += 1.0 / (k + 1);
+            cumulative[k] = sum;
+        }
+        Random random = new Random(2);
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i++) {
+            int k = Arrays.binarySearch(cumulative, random.nextDouble() * sum);
+            data[i] = (byte) (k >= 0 ? k : Math.min(-k - 1, cumulative.length - 1));
+        }
+        return data;
+    }
+
+    private static byte[] single(int size) {
+        byte[] data = new byte[size];
+        Arrays.fill(data, (byte) 'a');
+        return data;
+    }
+
+    private static byte[] repeat(byte[] text, int size) {
+        byte[] data = new byte[size];
+        for (int i = 0; i < size; i += text.length) {
+            System.arraycopy(text, 0, data, i, Math.min(text.length, size - i));
+        }
+        return data;
+    }
+
+    private static void write(File file, byte[] data) throws IOException {
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+}
@@ -0,0 +1,189 @@
+package huffman;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * This class is a finished huffman code that encodes and decodes, built once and then
+ * shared. Unlike HuffmanCoding it holds no file name and nothing changes after it is
+ * built, so any number of threads can use one codec at the same time without locks.
+ * Every thread reuses its own output buffers from call to call, so encoding and
+ * decoding byte arrays only allocates the returned array.
+ *
+ * Encoded data is in the format of writeBitString, followed by the EOF symbol if the
+ * code has one, exactly like HuffmanCoding.encode writes it. Encoding a byte the code
+ * has no codeword for throws IllegalArgumentException instead of losing it, so codes
+ * meant for arbitrary input should give every byte a codeword, like HuffmanDictionary's.
+ */
+public final class HuffmanCodec {
+    private static final int MAX_KEPT_OUTPUT = 1 << 20; // don't keep bigger per-thread buffers around
+
+    private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+    private final CodeTable table;
+    private final DecodeTable decodeTable;
+    private final boolean useEof;
+
+    /**
+     * @param table The code to encode and decode with, which must be a prefix code
+     */
+    public HuffmanCodec(CodeTable table) {
+        this.table = table;
+        this.decodeTable = new DecodeTable(table);
+        this.useEof = table.size() > HuffmanCoding.EOF && table.getLength(HuffmanCoding.EOF) > 0;
+    }
+
+    /**
+     * Builds the canonical code with the given codeword lengths
+     *
+     * @param lengths The codeword length of every symbol, 0 for symbols without one
+     */
+    public static HuffmanCodec fromLengths(int[] lengths) {
+        return new HuffmanCodec(CodeTable.canonical(lengths));
+    }
+
+    /**
+     * Encodes data, which must only have bytes the code has codewords for
+     *
+     * @param data The bytes to encode
+     * @return The encoded bits, in the format of writeBitString
+     */
+    public byte[] encode(byte[] data) {
+        long bitLength = useEof ? table.getLength(HuffmanCoding.EOF) : 0;
+        for (byte b : data) {
+            int length = (b & 0xFF) < table.size() ? table.getLength(b & 0xFF) : 0;
+            if (length == 0) throw new IllegalArgumentException("Byte " + (b & 0xFF) + " has no codeword");
+            bitLength += length;
+        }
+
+        Scratch scratch = SCRATCH.get();
+        try {
+            scratch.output.reset();
+            scratch.bits.writePadding(bitLength);
+            table.encode(ByteBuffer.wrap(data), scratch.bits);
+            if (useEof) scratch.bits.write(table.getCode(HuffmanCoding.EOF), table.getLength(HuffmanCoding.EOF));
+            scratch.bits.flush();
+            return scratch.output.toByteArray();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Writing to memory failed", e); // the scratch output never throws
+        }
+    }
+
+    /**
+     * Decodes bits written by encode
+     *
+     * @param encoded The encoded bits, in the format of writeBitString
+     * @return The original bytes
+     */
+    public byte[] decode(byte[] encoded) throws IOException {
+        Scratch scratch = SCRATCH.get();
+        scratch.output.reset();
+        decodeBits(new BitReader(ByteBuffer.wrap(encoded)), 8L * encoded.length, scratch.output, scratch.decoded);
+        return scratch.output.toByteArray();
+    }
+
+    /**
+     * Encodes inputFile into encodedFile, like HuffmanCoding.encode. The file must
+     * only have bytes the code has codewords for.
+     *
+     * @param inputFile The file to encode
+     * @param encodedFile The file to write (doesn't need to exist yet)
+     */
+    public void encode(String inputFile, String encodedFile) throws IOException {
+        long[] counts = new long[HuffmanCoding.ALPHABET_SIZE];
+        FrequencyCounter.count(inputFile, counts); //the padding depends on the total length
+        if (!table.covers(counts)) throw new IllegalArgumentException(inputFile + " has bytes without a codeword");
+        long bitLength = table.encodedLength(counts) + (useEof ? table.getLength(HuffmanCoding.EOF) : 0);
+
+        try (BitWriter out = new BitWriter(new FileOutputStream(encodedFile))) {
+            out.writePadding(bitLength);
+            encodeFile(table, inputFile, 0, out);
+        }
+    }
+
+    // Writes the codeword of every byte of inputFile, then the EOF symbol if the code has
+    // one. Reads 64 KB at a time, or a mapped window at a time when mappedWindow is above 0.
+    // HuffmanCoding encodes through here too, so both write exactly the same bits.
+    static void encodeFile(CodeTable table, String inputFile, long mappedWindow, BitWriter out) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(inputFile), StandardOpenOption.READ)) {
+            if (mappedWindow > 0) {
+                MappedFile mapped = new MappedFile(in, 0, mappedWindow);
+                for (ByteBuffer window = mapped.next(); window != null; window = mapped.next()) {
+                    table.encode(window, out);
+                }
+            }
+            else {
+                ByteBuffer buffer = ByteBuffer.allocateDirect(1 << 16);
+                while (in.read(buffer) != -1) {
+                    buffer.flip();
+                    table.encode(buffer, out);
+                    buffer.clear();
+                }
+            }
+        }
+        if (table.size() > HuffmanCoding.EOF && table.getLength(HuffmanCoding.EOF) > 0) {
+            out.write(table.getCode(HuffmanCoding.EOF), table.getLength(HuffmanCoding.EOF));
+        }
+    }
+
+    /**
+     * Decodes a file written by encode into decodedFile
+     *
+     * @param encodedFile The file which has already been encoded by encode()
+     * @param decodedFile The name of the new file we want to decode into
+     */
+    public void decode(String encodedFile, String decodedFile) throws IOException {
+        try (FileChannel in = FileChannel.open(Paths.get(encodedFile), StandardOpenOption.READ);
+             OutputStream out = new FileOutputStream(decodedFile)) {
+            decodeBits(new BitReader(in), 8L * in.size(), out, SCRATCH.get().decoded);
+        }
+    }
+
+    // Skips the padding, then decodes the rest of the bits
+    private void decodeBits(BitReader bits, long bitLength, OutputStream out, byte[] decoded) throws IOException {
+        if (bitLength > 0) bitLength -= bits.skipPadding();
+        decodeTable.decode(bits, bitLength, out, decoded);
+    }
+
+    public CodeTable getTable() { return table; }
+
+    // One thread's reusable buffers
+    private static class Scratch {
+        final ArrayOutput output = new ArrayOutput();
+        final BitWriter bits = new BitWriter(output);
+        final byte[] decoded = new byte[1 << 16];
+    }
+
+    // A ByteArrayOutputStream without locks, which forgets very large arrays when reset
+    private static class ArrayOutput extends OutputStream {
+        private byte[] array = new byte[1 << 12];
+        private int size;
+
+        void reset() {
+            if (array.length > MAX_KEPT_OUTPUT) array = new byte[1 << 12];
+            size = 0;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(array, size);
+        }
+
+        public void write(int b) {
+            if (size == array.length) array = Arrays.copyOf(array, array.length * 2);
+            array[size++] = (byte) b;
+        }
+
+        public void write(byte[] b, int off, int len) {
+            if (size + len > array.length) array = Arrays.copyOf(array, Math.max(size + len, array.length * 2));
+            System.arraycopy(b, off, array, size, len);
+            size += len;
+        }
+    }
+}
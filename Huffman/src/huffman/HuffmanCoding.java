@@ -1,8 +1,17 @@
 package huffman;
 
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Collections;
 
@@ -16,10 +25,18 @@ import javax.sound.midi.Soundbank;
  * @author Prince Rawal
  */
 public class HuffmanCoding {
+    public static final int ALPHABET_SIZE = 256; // every possible byte value
+    public static final int EOF = 256;           // optional symbol marking the end of the text
+
     private String fileName;
     private ArrayList<CharFreq> sortedCharFreqList;
     private TreeNode huffmanRoot;
     private String[] encodings;
+    private long[] charCounts; // how many times each character appears, set by makeSortedList
+    private boolean useEof;   // whether the EOF symbol is coded after the text
+    private int maxCodeLength; // longest codeword makeTree may make, 0 for no limit
+    private long mappedWindow;  // bytes per memory mapped window, 0 to read through buffers
+    private HuffmanMetrics metrics; // where to report measurements, null to not measure
 
     /**
      * Constructor used by the driver, sets filename
@@ -31,22 +48,68 @@ public class HuffmanCoding {
     }
 
     /**
-     * Reads from filename character by character, and sets sortedCharFreqList
-     * to a new ArrayList of CharFreq objects with frequency > 0, sorted by frequency
+     * Sets whether an EOF symbol (character 256) is coded once after the text, so a
+     * decoder can find the end of the text without knowing its length.
+     * Must be set before makeSortedList.
+     * 
+     * @param eof true to code the EOF symbol
+     */
+    public void setUseEof(boolean eof) {
+        useEof = eof;
+    }
+
+    /**
+     * Sets the longest codeword makeTree may make. With a limit, makeTree builds the best
+     * length limited code with package-merge instead of the two-queue algorithm, so every
+     * codeword fits in one decoding table probe (see DecodeTable.MAX_ROOT_BITS).
+     * 
+     * @param maxLength The longest codeword allowed, or 0 for no limit
+     */
+    public void setMaxCodeLength(int maxLength) {
+        maxCodeLength = maxLength;
+    }
+
+    /**
+     * Sets whether files are read through memory mapped windows instead of buffers, in
+     * makeSortedList, encode, encodeCanonical and decode. Files bigger than the window
+     * are mapped one window at a time, so the heap stays the same size for any file.
+     * 
+     * @param windowSize The most bytes to map at once (see MappedFile.DEFAULT_WINDOW),
+     *                   or 0 to read through buffers
+     */
+    public void setMemoryMapped(long windowSize) {
+        mappedWindow = windowSize;
+    }
+
+    /**
+     * Sets where makeSortedList, makeTree, makeEncodings, encode, encodeCanonical and
+     * decode report how long they took and how much they read and wrote
+     * 
+     * @param metrics The receiver of the measurements, or null to not measure
+     */
+    public void setMetrics(HuffmanMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Reads from filename in buffered byte chunks, and sets sortedCharFreqList
+     * to a new ArrayList of CharFreq objects with frequency > 0, sorted by frequency.
+     * Every byte value 0-255 is a character, so binary files work too.
      */
     public void makeSortedList() {
+        long start = metrics != null ? System.nanoTime() : 0;
 
-        StdIn.setFile(fileName);
-        char value; //creates a current char
-        double charCounter = 0; //counts characters; last character is already accounted for
-        int ASCII[] = new int[128]; //creates an array that has every ASCII value and counts how many times each appear
+        long ASCII[] = new long[useEof ? ALPHABET_SIZE + 1 : ALPHABET_SIZE]; //creates an array that has every byte value and counts how many times each appear
         sortedCharFreqList = new ArrayList<CharFreq>(); //creates new sorted array list
 
-        while (StdIn.hasNextChar()){
-            value = StdIn.readChar(); //grabs the current char 
-            ASCII[value]++; //goes to the char index and adds to its occurance  
+        //reads the file in buffered chunks and adds each byte to its index's occurance
+        double charCounter = mappedWindow > 0 ? FrequencyCounter.countMapped(fileName, ASCII, mappedWindow)
+                                              : FrequencyCounter.count(fileName, ASCII);
+        if (useEof){ //the EOF symbol appears once, after the text
+            ASCII[EOF]++;
             charCounter++;
         }
+        charCounts = ASCII;
 
         for(int i = 0; i < ASCII.length; i++){
             double probOcc = ASCII[i]/charCounter; //calculates the occurance 
@@ -58,7 +121,7 @@ public class HuffmanCoding {
         }
         if (sortedCharFreqList.size() == 1){ //if there is only one CharFreq in array list 
             char charry = sortedCharFreqList.get(0).getCharacter(); //get the char at index 0 
-            if ((int)charry == 127){ //if the char is the 127th value in ASCII
+            if ((int)charry == ASCII.length - 1){ //if the char is the last value in the array
                 CharFreq fhar = new CharFreq((char)0, 0); //create fhar
                 sortedCharFreqList.add(fhar); //add fhar to list
             }
@@ -69,6 +132,22 @@ public class HuffmanCoding {
             }
         }
         Collections.sort(sortedCharFreqList); //sort list 
+
+        if (metrics != null) {
+            long bytes = (long) charCounter - (useEof ? 1 : 0);
+            metrics.stage(HuffmanMetrics.Stage.MAKE_SORTED_LIST, System.nanoTime() - start, bytes, 0);
+        }
+    }
+
+    /**
+     * Estimates the size of the encoded file from the counts of makeSortedList, before
+     * building the tree. No code can beat the entropy of the counts, so if this is not
+     * smaller than the file, encoding it is a waste.
+     *
+     * @return The fewest bytes encode could write
+     */
+    public long estimateEncodedSize() {
+        return Entropy.expectedBits(charCounts) / 8 + 1; //plus the padding
     }
 
     /**
@@ -76,96 +155,110 @@ public class HuffmanCoding {
      * in huffmanRoot
      */
     public void makeTree() {
+        long start = metrics != null ? System.nanoTime() : 0;
+        if (maxCodeLength > 0) makeLimitedTree(); //length limited codes use package-merge instead
+        else makeHuffmanTree();
+
+        if (metrics != null) {
+            metrics.stage(HuffmanMetrics.Stage.MAKE_TREE, System.nanoTime() - start, 0, 0);
+            long[] totals = new long[3]; //deepest leaf, sum of count * depth, sum of counts
+            if (huffmanRoot != null) measureTree(huffmanRoot, 0, totals);
+            metrics.tree((int) totals[0], totals[2] == 0 ? 0 : totals[1] / (double) totals[2]);
+        }
+    }
 
-        Queue<CharFreq> source = new Queue<CharFreq>(); //create queue source
-        Queue<TreeNode> target = new Queue<TreeNode>(); //create queue target
-
-        for (int i = 0; i < sortedCharFreqList.size(); i++){ //puts all the nodes created in method 1 into the source
-            source.enqueue(sortedCharFreqList.get(i));
+    private void makeHuffmanTree() {
+        //builds the tree on the integer counts, then wraps it in TreeNodes holding the CharFreqs
+        long[] weights = sortedWeights();
+        HuffmanTree tree = new HuffmanTree(weights);
+        double total = 0;
+        for (long weight : weights) total += weight;
+
+        TreeNode[] nodes = new TreeNode[tree.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            if (tree.isLeaf(i)) nodes[i] = new TreeNode(sortedCharFreqList.get(i), null, null);
+            else nodes[i] = new TreeNode(new CharFreq(null, tree.getWeight(i) / total),
+                                         nodes[tree.getLeft(i)], nodes[tree.getRight(i)]);
         }
-        while (source.isEmpty() != true || target.size() > 1){ //while there are still nodes in source and target doesnt have only one node, 
-                if (target.isEmpty()){ //if target is empty
-                    CharFreq firstski = source.dequeue(); //set firstski equal to smaller of 2 smallest values
-                    CharFreq secondski = source.dequeue(); //set secondski equal to larger value of 2 smallest values
-                    CharFreq tempy = new CharFreq(null,secondski.getProbOcc() + firstski.getProbOcc()); //create temp CharFreq that computes; will be parent & root
+        huffmanRoot = nodes.length == 0 ? null : nodes[tree.getRoot()];
+    }
 
-                    TreeNode first = new TreeNode(firstski, null, null); //store smaller value into new TreeNode
-                    TreeNode second = new TreeNode(secondski, null, null); //store larger value into new TreeNode
+    // Returns the count of every character in sortedCharFreqList, in the same order
+    private long[] sortedWeights() {
+        long[] weights = new long[sortedCharFreqList.size()];
+        for (int i = 0; i < weights.length; i++) {
+            char c = sortedCharFreqList.get(i).getCharacter();
+            weights[i] = c < charCounts.length ? charCounts[c] : 0; //the extra character never appears
+        }
+        return weights;
+    }
 
-                    huffmanRoot = new TreeNode(tempy, first, second); //set tempy as the root
+    // Builds the tree of the canonical code with package-merge lengths, so no leaf is
+    // deeper than maxCodeLength
+    private void makeLimitedTree() {
+        long[] weights = sortedWeights();
+        int[] sortedLengths = CodeLengths.packageMerge(weights, maxCodeLength);
 
-                    target.enqueue(huffmanRoot); //add to target 
-                }
-                else {
-                    CharFreq firstski = new CharFreq(); //make a CharFreq that carries the data of the smallest size ProbOcc
-                    CharFreq secondski = new CharFreq();//make a CharFreq that carries the data of the second smallest size ProbOcc
-                    CharFreq parento = new CharFreq(); //make a parent that holds the info of first plus second
-                    TreeNode left = new TreeNode(); //make a treenode that holds firstski (will be parent's child)
-                    TreeNode right = new TreeNode(); //make a treenode that holds secondski (will be parent's child)
-
-                    for (int i = 0; i < 2; i++){ //for loop that goes two times to grab the two smallest variables in source & target 
-                        if (i == 0 && source.isEmpty()){ //source is empty for the first and second itt.
-                            firstski = target.peek().getData(); //set first as the first out in the target queue 
-                            left = (target.dequeue()); //set first out as left and remove from target queue 
-                            secondski = target.peek().getData(); //set second as the second out in target queue 
-                            right = (target.dequeue()); //remove second out and set it to right child
-                            break; //break out of for loop 
-                        }
-                        if (i == 1 && source.isEmpty()){ //source is empty for only the second itt.
-                            secondski = target.peek().getData(); //set second out as secondski
-                            right = (target.dequeue());  //remove second out and set as right child
-                            break; //break out of for loop 
-                        }
-
-                        if(target.isEmpty() && i==1)
-                        {
-                            secondski = source.dequeue();
-                            right = new TreeNode(secondski, null , null);
-                            break;
-                        }
-
-
-                        if (i == 0){ //if firstski has nothing in it
-                            if (target.peek().getData().getProbOcc() < source.peek().getProbOcc()){ //if target holds the smallest, 
-                                firstski = target.peek().getData(); //then peek at the first out and set its data to firstski
-                                left = target.dequeue(); //remove the first out and set to left child
-                            }
-                            else if (target.peek().getData().getProbOcc() >= source.peek().getProbOcc()){ //if source holds the smallest OR if target and source are equal, 
-                                firstski = source.dequeue(); //remove first out in source and set to first
-                                left = new TreeNode(firstski, null, null); //set left child to firstski 
-                            }
-                        }
-                        if(i == 1) { //if firstski has something in it
-                            if (target.peek().getData().getProbOcc() >= source.peek().getProbOcc()){ //if source holds the smallest
-                                secondski = source.dequeue(); //remove from source and set to secondski 
-                                right = new TreeNode(secondski, null, null); //set right child to secondski 
-                            }
-                            else if (target.peek().getData().getProbOcc() < source.peek().getProbOcc()){ //if target holds the smallest, 
-                                secondski = target.peek().getData(); //then peek at the first out and set its data to firstski
-                                right = target.dequeue(); //remove the first out and set to left child
-                            }
-                        }
-                    }
-                    parento.setProbOcc(firstski.getProbOcc() + secondski.getProbOcc()); //set parent's proabablity occurance to firstski+secondski
-                    huffmanRoot = new TreeNode(parento, left, right); //change the huffmanRoot to parent with left and right child
-
-                    target.enqueue(huffmanRoot);//add new root to target node 
+        int[] lengths = new int[charCounts.length];
+        for (int i = 0; i < weights.length; i++) {
+            lengths[sortedCharFreqList.get(i).getCharacter()] = sortedLengths[i];
+        }
+        CodeTable table = CodeTable.canonical(lengths);
+
+        // Add a path of internal nodes down to every leaf, then total up their probabilities
+        huffmanRoot = sortedCharFreqList.isEmpty() ? null : new TreeNode(new CharFreq(), null, null);
+        for (CharFreq leaf : sortedCharFreqList) {
+            char c = leaf.getCharacter();
+            TreeNode node = huffmanRoot;
+            for (int bit = table.getLength(c) - 1; bit > 0; bit--) {
+                boolean right = ((table.getCode(c) >>> bit) & 1) == 1;
+                TreeNode child = right ? node.getRight() : node.getLeft();
+                if (child == null) {
+                    child = new TreeNode(new CharFreq(), null, null);
+                    if (right) node.setRight(child);
+                    else node.setLeft(child);
                 }
+                node = child;
+            }
+            if ((table.getCode(c) & 1) == 1) node.setRight(new TreeNode(leaf, null, null));
+            else node.setLeft(new TreeNode(leaf, null, null));
+        }
+        if (huffmanRoot != null) addProbabilities(huffmanRoot);
+    }
+
+    // Adds up the depths of the leaves under node, weighted by their counts
+    private void measureTree(TreeNode node, int depth, long[] totals) {
+        if (node.getLeft() == null && node.getRight() == null) {
+            char c = node.getData().getCharacter();
+            long count = c < charCounts.length ? charCounts[c] : 0;
+            totals[0] = Math.max(totals[0], depth);
+            totals[1] += count * depth;
+            totals[2] += count;
+            return;
         }
+        if (node.getLeft() != null) measureTree(node.getLeft(), depth + 1, totals);
+        if (node.getRight() != null) measureTree(node.getRight(), depth + 1, totals);
     }
 
+    private double addProbabilities(TreeNode node) {
+        if (node.getLeft() == null && node.getRight() == null) return node.getData().getProbOcc();
+        node.getData().setProbOcc(addProbabilities(node.getLeft()) + addProbabilities(node.getRight()));
+        return node.getData().getProbOcc();
+    }
 
     /**
-     * Uses huffmanRoot to create a string array of size 128, where each
-     * index in the array contains that ASCII character's bitstring encoding. Characters not
+     * Uses huffmanRoot to create a string array of size 256 (257 with the EOF symbol), where each
+     * index in the array contains that character's bitstring encoding. Characters not
      * present in the huffman coding tree should have their spots in the array left null.
      * Set encodings to this array.
      */
     public void makeEncodings() {
-        encodings = new String[128];
+        long start = metrics != null ? System.nanoTime() : 0;
+        encodings = new String[useEof ? ALPHABET_SIZE + 1 : ALPHABET_SIZE];
         TreeNode root = huffmanRoot;
         String key = "";
-        searchy(root, key);
+        if (root != null) searchy(root, key); //an empty file has no tree
+        if (metrics != null) metrics.stage(HuffmanMetrics.Stage.MAKE_ENCODINGS, System.nanoTime() - start, 0, 0);
     }
 
     private void searchy(TreeNode root, String key){
@@ -184,20 +277,121 @@ public class HuffmanCoding {
         }
     }
     /**
-     * Using encodings and filename, this method makes use of the writeBitString method
-     * to write the final encoding of 1's and 0's to the encoded file.
+     * Returns the code made by makeEncodings as a codec that many threads can share,
+     * which encodes and decodes exactly like encode and decode
+     *
+     * @return An immutable codec with the same codewords as encodings
+     */
+    public HuffmanCodec toCodec() {
+        return new HuffmanCodec(CodeTable.fromEncodings(encodings));
+    }
+
+    /**
+     * Using encodings and filename, this method writes the final encoding of 1's and 0's
+     * to the encoded file in the same format as the writeBitString method. Codewords are
+     * packed straight into bytes instead of being concatenated into one big String.
      * 
      * @param encodedFile The file name into which the text file is to be encoded
      */
     public void encode(String encodedFile) {
-        StdIn.setFile(fileName);
-        String s = "";
-        while (StdIn.hasNextChar()){
-            s = s + encodings[StdIn.readChar()];
+        long start = metrics != null ? System.nanoTime() : 0;
+        CodeTable table = CodeTable.fromEncodings(encodings);
+        long[] counts = getCharCounts(); //the padding depends on the total length
+
+        try (BitWriter out = new BitWriter(new FileOutputStream(encodedFile))) {
+            out.writePadding(table.encodedLength(counts));
+            HuffmanCodec.encodeFile(table, fileName, mappedWindow, out);
+        }
+        catch (IOException e) {
+            System.err.println("Error when writing to file!");
         }
-        writeBitString(encodedFile, s);
+        if (metrics != null) reportEncode(start, encodedFile);
     }
     
+    /**
+     * Encodes the file with the canonical code that has the same codeword lengths as
+     * encodings, so the result is exactly as small as with encode(). The encoded file
+     * starts with a small header of those lengths, followed by the bits in the format
+     * of writeBitString, so decodeCanonical can decode it without this object's tree.
+     * 
+     * @param encodedFile The file name into which the text file is to be encoded
+     */
+    public void encodeCanonical(String encodedFile) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        int[] lengths = new int[encodings.length];
+        for (int i = 0; i < encodings.length; i++) {
+            if (encodings[i] != null) lengths[i] = encodings[i].length();
+        }
+        CodeTable table = CodeTable.canonical(lengths);
+        long[] counts = getCharCounts();
+
+        try (OutputStream file = new FileOutputStream(encodedFile);
+             BitWriter out = new BitWriter(file)) {
+            DataOutputStream header = new DataOutputStream(new BufferedOutputStream(file));
+            table.writeHeader(header);
+            header.flush();
+
+            out.writePadding(table.encodedLength(counts));
+            HuffmanCodec.encodeFile(table, fileName, mappedWindow, out);
+        }
+        catch (IOException e) {
+            System.err.println("Error when writing to file!");
+        }
+        if (metrics != null) reportEncode(start, encodedFile);
+    }
+
+    private void reportEncode(long start, String encodedFile) {
+        long nanos = System.nanoTime() - start;
+        metrics.stage(HuffmanMetrics.Stage.ENCODE, nanos, new File(fileName).length(), new File(encodedFile).length());
+    }
+
+    /**
+     * Decodes a file written by encodeCanonical, rebuilding the code from the lengths
+     * in its header. Needs no tree, so it can run anywhere the encoded file goes.
+     * 
+     * @param encodedFile The file which has already been encoded by encodeCanonical()
+     * @param decodedFile The name of the new file we want to decode into
+     */
+    public static void decodeCanonical(String encodedFile, String decodedFile) {
+        decodeCanonical(encodedFile, decodedFile, 0);
+    }
+
+    /**
+     * Same as decodeCanonical, reading the encoded file through memory mapped windows
+     * 
+     * @param encodedFile The file which has already been encoded by encodeCanonical()
+     * @param decodedFile The name of the new file we want to decode into
+     * @param windowSize The most bytes to map at once, or 0 to read through buffers
+     */
+    public static void decodeCanonical(String encodedFile, String decodedFile, long windowSize) {
+        try (FileChannel in = FileChannel.open(Paths.get(encodedFile), StandardOpenOption.READ);
+             OutputStream out = new FileOutputStream(decodedFile)) {
+            DecodeTable table = new DecodeTable(CodeTable.readHeader(new DataInputStream(Channels.newInputStream(in))));
+            decodeBits(in, table, out, windowSize);
+        }
+        catch (IOException e) {
+            System.err.println("Error while reading file!");
+        }
+    }
+
+    // Decodes the rest of in, which is in the format of writeBitString
+    private static long decodeBits(FileChannel in, DecodeTable table, OutputStream out, long windowSize) throws IOException {
+        long bitLength = (in.size() - in.position()) * 8;
+        BitReader bits = windowSize > 0 ? new BitReader(new MappedFile(in, in.position(), windowSize)) : new BitReader(in);
+        if (bitLength > 0) bitLength -= bits.skipPadding();
+        return table.decode(bits, bitLength, out);
+    }
+
+    // Returns the counts from makeSortedList, counting the file again if they are missing
+    private long[] getCharCounts() {
+        if (charCounts == null) {
+            charCounts = new long[encodings.length];
+            FrequencyCounter.count(fileName, charCounts);
+            if (useEof) charCounts[EOF]++;
+        }
+        return charCounts;
+    }
+
     /**
      * Writes a given string of 1's and 0's to the given file byte by byte
      * and NOT as characters of 1 and 0 which take up 8 bits each
@@ -250,31 +444,28 @@ public class HuffmanCoding {
     }
 
     /**
-     * Using a given encoded file name, this method makes use of the readBitString method 
-     * to convert the file into a bit string, then decodes the bit string using the 
-     * tree, and writes it to a decoded file. 
+     * Using a given encoded file name, this method reads the file (in the format written
+     * by writeBitString) straight out of a byte buffer, decodes it using lookup tables
+     * built from the tree, and writes it to a decoded file.
      * 
      * @param encodedFile The file which has already been encoded by encode()
      * @param decodedFile The name of the new file we want to decode into
      */
     public void decode(String encodedFile, String decodedFile) {
+        long start = metrics != null ? System.nanoTime() : 0;
+        long symbols = 0;
+        DecodeTable table = new DecodeTable(CodeTable.fromTree(huffmanRoot, encodings != null ? encodings.length : ALPHABET_SIZE + 1));
 
-        StdOut.setFile(decodedFile);
-        String swag = readBitString(encodedFile);
-        TreeNode root = huffmanRoot; 
-        TreeNode pointer = root;
-        for (int i = 0; i < swag.length();i++){
-            
-            if (swag.charAt(i) == '0'){
-                pointer = pointer.getLeft();
-            }
-            if (swag.charAt(i) == '1') {
-                pointer = pointer.getRight();
-            }
-            if (pointer.getLeft() == null && pointer.getRight() == null){
-                StdOut.print(pointer.getData().getCharacter());
-                pointer = root; 
-            }
+        try (FileChannel in = FileChannel.open(Paths.get(encodedFile), StandardOpenOption.READ);
+             OutputStream out = new FileOutputStream(decodedFile)) {
+            symbols = decodeBits(in, table, out, mappedWindow);
+        }
+        catch (IOException e) {
+            System.err.println("Error while reading file!");
+        }
+        if (metrics != null) {
+            metrics.stage(HuffmanMetrics.Stage.DECODE, System.nanoTime() - start, new File(encodedFile).length(), symbols);
+            metrics.symbolsDecoded(symbols);
         }
     }
 
@@ -0,0 +1,111 @@
+package huffman;
+
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * This class decodes the frames written by HuffmanEncoderStream from another
+ * stream, one frame at a time, so memory stays bounded by the frame size.
+ * Raw frames are copied as they are.
+ */
+public class HuffmanDecoderStream extends InputStream {
+    private final DataInputStream in;
+    private byte[] encoded = new byte[0];
+    private byte[] block = new byte[0];
+    private int blockLength, blockIndex;
+    private boolean finished;
+
+    /**
+     * @param in The stream to read the encoded frames from
+     */
+    public HuffmanDecoderStream(InputStream in) {
+        this.in = new DataInputStream(in);
+    }
+
+    public int read() throws IOException {
+        if (blockIndex == blockLength && !readFrame()) return -1;
+        return block[blockIndex++] & 0xFF;
+    }
+
+    public int read(byte[] b, int off, int len) throws IOException {
+        if (len == 0) return 0;
+        if (blockIndex == blockLength && !readFrame()) return -1;
+        int n = Math.min(len, blockLength - blockIndex);
+        System.arraycopy(block, blockIndex, b, off, n);
+        blockIndex += n;
+        return n;
+    }
+
+    public int available() {
+        return blockLength - blockIndex;
+    }
+
+    public void close() throws IOException {
+        finished = true;
+        in.close();
+    }
+
+    // Reads and decodes the next non-empty frame, returning false at the end of the stream
+    private boolean readFrame() throws IOException {
+        while (!finished) {
+            int length = in.readInt();
+            if (length == 0) {
+                finished = true;
+                break;
+            }
+            if (length < -HuffmanEncoderStream.MAX_BLOCK_SIZE || length > HuffmanEncoderStream.MAX_BLOCK_SIZE) {
+                throw new IOException("Corrupt frame length");
+            }
+            if (length < 0) { // a raw frame
+                if (block.length < -length) block = new byte[-length];
+                in.readFully(block, 0, -length);
+                blockLength = -length;
+                blockIndex = 0;
+                return true;
+            }
+
+            DecodeTable table = new DecodeTable(CodeTable.readHeader(in));
+            int encodedLength = in.readInt();
+            // Codewords are at most 15 bits, so a valid frame is never much bigger than its block
+            if (encodedLength < 1 || encodedLength > 2 * length + 1) throw new IOException("Corrupt frame length");
+            if (encoded.length < encodedLength) encoded = new byte[encodedLength];
+            in.readFully(encoded, 0, encodedLength);
+            if (block.length < length) block = new byte[length];
+
+            BitReader bits = new BitReader(ByteBuffer.wrap(encoded, 0, encodedLength));
+            int padding = bits.skipPadding();
+            ArrayOutput output = new ArrayOutput(block);
+            table.decode(bits, 8L * encodedLength - padding, output);
+            if (output.size != length) throw new EOFException("Frame decoded to the wrong length");
+
+            blockLength = length;
+            blockIndex = 0;
+            return true;
+        }
+        return false;
+    }
+
+    // Collects decoded bytes into the block array
+    private static class ArrayOutput extends OutputStream {
+        private final byte[] array;
+        private int size;
+
+        ArrayOutput(byte[] array) {
+            this.array = array;
+        }
+
+        public void write(int b) throws IOException {
+            write(new byte[] { (byte) b }, 0, 1);
+        }
+
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (size + len > array.length) throw new IOException("Frame decodes to more bytes than it holds");
+            System.arraycopy(b, off, array, size, len);
+            size += len;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package huffman;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * This class is a huffman code trained once on a sample corpus and shared by many
+ * small messages, which are too short to pay for their own makeSortedList, makeTree
+ * and header. Every byte value gets a codeword, even ones the corpus never had, so
+ * any message can be encoded. Dictionaries are saved with an ID, and every encoded
+ * message starts with the ID of its dictionary, so decoders can find it in the cache.
+ *
+ * Encoded message layout: int dictionary ID, then the bits in the format of writeBitString
+ */
+public class HuffmanDictionary {
+    public static final int MAGIC = 0x48554644;    // "HUFD"
+    public static final int MAX_CODE_LENGTH = 15; // every codeword decodes in one probe
+
+    private static final ConcurrentHashMap<Integer, HuffmanDictionary> CACHE = new ConcurrentHashMap<>();
+
+    private final int id;
+    private final CodeTable table;
+    private final DecodeTable decodeTable;
+
+    private HuffmanDictionary(int id, CodeTable table) {
+        this.id = id;
+        this.table = table;
+        this.decodeTable = new DecodeTable(table);
+    }
+
+    /**
+     * Builds a dictionary from the byte counts of the sample files, and caches it
+     *
+     * @param id The ID to save the dictionary and tag its messages with
+     * @param sampleFiles Files with typical messages
+     * @return The trained dictionary
+     */
+    public static HuffmanDictionary train(int id, String... sampleFiles) {
+        long[] counts = new long[HuffmanCoding.ALPHABET_SIZE];
+        for (String file : sampleFiles) FrequencyCounter.count(file, counts);
+
+        // Count every byte once more, so bytes the samples never had still get a codeword
+        for (int i = 0; i < counts.length; i++) counts[i]++;
+        return register(new HuffmanDictionary(id, CodeTable.canonical(CodeLengths.limited(counts, MAX_CODE_LENGTH))));
+    }
+
+    /**
+     * Writes the dictionary's ID and code lengths to a file
+     *
+     * @param filename The file to write to (doesn't need to exist yet)
+     */
+    public void save(String filename) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(filename)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(id);
+            table.writeHeader(out);
+        }
+    }
+
+    /**
+     * Reads a dictionary written by save, and caches it
+     *
+     * @param filename The file to read from
+     * @return The dictionary in the file
+     */
+    public static HuffmanDictionary load(String filename) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(filename)))) {
+            if (in.readInt() != MAGIC) throw new IOException(filename + " is not a huffman dictionary");
+            int id = in.readInt();
+            return register(new HuffmanDictionary(id, CodeTable.readHeader(in)));
+        }
+    }
+
+    /**
+     * Returns the cached dictionary with the given ID, or null if none was trained or loaded
+     */
+    public static HuffmanDictionary forId(int id) {
+        return CACHE.get(id);
+    }
+
+    private static HuffmanDictionary register(HuffmanDictionary dictionary) {
+        CACHE.put(dictionary.id, dictionary);
+        return dictionary;
+    }
+
+    /**
+     * Encodes one message with this dictionary's code
+     *
+     * @param message The bytes to encode
+     * @return The dictionary ID followed by the encoded bits
+     */
+    public byte[] encode(byte[] message) {
+        long bitLength = 0;
+        for (byte b : message) bitLength += table.getLength(b & 0xFF);
+
+        try {
+            ByteArrayOutputStream encoded = new ByteArrayOutputStream(4 + (int) (bitLength / 8) + 1);
+            new DataOutputStream(encoded).writeInt(id);
+            BitWriter out = new BitWriter(encoded);
+            out.writePadding(bitLength);
+            table.encode(ByteBuffer.wrap(message), out);
+            out.flush();
+            return encoded.toByteArray();
+        }
+        catch (IOException e) {
+            throw new IllegalStateException("Writing to memory failed", e); // ByteArrayOutputStream never throws
+        }
+    }
+
+    /**
+     * Decodes one message encoded by this dictionary
+     *
+     * @param encoded The dictionary ID followed by the encoded bits
+     * @return The original message
+     */
+    public byte[] decode(byte[] encoded) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(encoded);
+        if (buffer.remaining() < 5 || buffer.getInt() != id) {
+            throw new IOException("Message was not encoded with dictionary " + id);
+        }
+        BitReader bits = new BitReader(buffer);
+        int padding = bits.skipPadding();
+
+        ByteArrayOutputStream decoded = new ByteArrayOutputStream(2 * encoded.length);
+        decodeTable.decode(bits, 8L * (encoded.length - 4) - padding, decoded);
+        return decoded.toByteArray();
+    }
+
+    /**
+     * Decodes a message with whichever cached dictionary its ID names
+     *
+     * @param encoded The dictionary ID followed by the encoded bits
+     * @return The original message
+     */
+    public static byte[] decodeMessage(byte[] encoded) throws IOException {
+        if (encoded.length < 4) throw new IOException("Message is too short");
+        int id = ByteBuffer.wrap(encoded).getInt();
+        HuffmanDictionary dictionary = forId(id);
+        if (dictionary == null) throw new IOException("No dictionary with ID " + id + " is loaded");
+        return dictionary.decode(encoded);
+    }
+
+    public int getId() { return id; }
+    public CodeTable getTable() { return table; }
+}
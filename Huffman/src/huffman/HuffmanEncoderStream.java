@@ -0,0 +1,129 @@
+package huffman;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * This class huffman encodes everything written to it onto another stream, so
+ * data can be compressed on the fly without temp files or the global StdIn/StdOut.
+ * Bytes are collected into blocks of a fixed size, and every block is written as a
+ * frame with its own code, so memory stays bounded by the block size.
+ *
+ * Frame layout, read back by HuffmanDecoderStream:
+ * - int number of bytes in the block, 0 marking the end of the stream
+ * - the block's code length header (CodeTable.writeHeader)
+ * - int number of encoded bytes, then the bits in the format of writeBitString
+ *
+ * Blocks that their code would not shrink are written as raw frames instead:
+ * - int minus the number of bytes in the block, then the bytes as they are
+ */
+public class HuffmanEncoderStream extends OutputStream {
+    public static final int DEFAULT_BLOCK_SIZE = 1 << 16; // 64 KB
+    public static final int MAX_BLOCK_SIZE = 1 << 24;     // 16 MB, the most a decoder will buffer
+    public static final int MAX_CODE_LENGTH = 15;         // so frames decode in one probe per symbol
+
+    private final OutputStream out;
+    private final byte[] block;
+    private int blockLength;
+    private final long[] counts = new long[HuffmanCoding.ALPHABET_SIZE];
+    private final ByteArrayOutputStream frame = new ByteArrayOutputStream();
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream();
+    private boolean closed;
+
+    public HuffmanEncoderStream(OutputStream out) {
+        this(out, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param out The stream to write the encoded frames to
+     * @param blockSize The number of bytes per frame, at most MAX_BLOCK_SIZE
+     */
+    public HuffmanEncoderStream(OutputStream out, int blockSize) {
+        if (blockSize <= 0 || blockSize > MAX_BLOCK_SIZE) {
+            throw new IllegalArgumentException("Block size must be between 1 and " + MAX_BLOCK_SIZE);
+        }
+        this.out = out;
+        block = new byte[blockSize];
+    }
+
+    public void write(int b) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        block[blockLength++] = (byte) b;
+        if (blockLength == block.length) writeFrame();
+    }
+
+    public void write(byte[] b, int off, int len) throws IOException {
+        if (closed) throw new IOException("Stream closed");
+        while (len > 0) {
+            int n = Math.min(len, block.length - blockLength);
+            System.arraycopy(b, off, block, blockLength, n);
+            blockLength += n;
+            off += n;
+            len -= n;
+            if (blockLength == block.length) writeFrame();
+        }
+    }
+
+    /**
+     * Encodes whatever is buffered as a (possibly short) frame, and flushes the
+     * underlying stream, so everything written so far can be decoded
+     */
+    public void flush() throws IOException {
+        if (closed) return;
+        if (blockLength > 0) writeFrame();
+        out.flush();
+    }
+
+    /**
+     * Writes the last frame and the end marker, then closes the underlying stream
+     */
+    public void close() throws IOException {
+        if (closed) return;
+        if (blockLength > 0) writeFrame();
+        new DataOutputStream(out).writeInt(0);
+        closed = true;
+        out.close();
+    }
+
+    // Encodes the buffered block with a code of its own and writes it as one frame
+    private void writeFrame() throws IOException {
+        Arrays.fill(counts, 0);
+        ByteBuffer buffer = ByteBuffer.wrap(block, 0, blockLength);
+        FrequencyCounter.count(buffer, counts);
+        // Charge the frame for its header, so most raw blocks are found without building a code
+        if (Entropy.storeRaw(counts, 8L * (CodeTable.headerSize(counts) + 4))) {
+            writeRawFrame();
+            return;
+        }
+        CodeTable table = CodeTable.canonical(CodeLengths.limited(counts, MAX_CODE_LENGTH));
+        if (table.encodedLength(counts) + 8L * (table.headerSize() + 4) >= 8L * blockLength) {
+            writeRawFrame();
+            return;
+        }
+
+        payload.reset();
+        BitWriter bits = new BitWriter(payload);
+        bits.writePadding(table.encodedLength(counts));
+        table.encode(ByteBuffer.wrap(block, 0, blockLength), bits);
+        bits.flush();
+
+        frame.reset();
+        DataOutputStream header = new DataOutputStream(frame);
+        header.writeInt(blockLength);
+        table.writeHeader(header);
+        header.writeInt(payload.size());
+        payload.writeTo(frame);
+        frame.writeTo(out);
+        blockLength = 0;
+    }
+
+    private void writeRawFrame() throws IOException {
+        new DataOutputStream(out).writeInt(-blockLength);
+        out.write(block, 0, blockLength);
+        blockLength = 0;
+    }
+}
@@ -0,0 +1,37 @@
+package huffman;
+
+/**
+ * This interface receives measurements from HuffmanCoding, so they can be exported
+ * to a metrics system. Set it with HuffmanCoding.setMetrics. Without one, HuffmanCoding
+ * skips the measuring entirely, so it costs nothing when it is not used.
+ */
+public interface HuffmanMetrics {
+
+    // The steps of HuffmanCoding that are timed
+    enum Stage { MAKE_SORTED_LIST, MAKE_TREE, MAKE_ENCODINGS, ENCODE, DECODE }
+
+    /**
+     * Called when a step finishes
+     *
+     * @param stage The step that finished
+     * @param nanos How long it took
+     * @param bytesIn How many bytes it read from files, 0 if it read none
+     * @param bytesOut How many bytes it wrote to files, 0 if it wrote none
+     */
+    void stage(Stage stage, long nanos, long bytesIn, long bytesOut);
+
+    /**
+     * Called when makeTree finishes
+     *
+     * @param depth The length of the longest codeword
+     * @param averageCodeLength The average codeword length in bits per character of the file
+     */
+    void tree(int depth, double averageCodeLength);
+
+    /**
+     * Called when decode finishes
+     *
+     * @param symbols The number of characters decoded
+     */
+    void symbolsDecoded(long symbols);
+}
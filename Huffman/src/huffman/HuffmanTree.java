@@ -0,0 +1,62 @@
+package huffman;
+
+/**
+ * This class builds a huffman coding tree on integer weights kept in flat
+ * parallel arrays, so building it boxes nothing and makes no objects per merge.
+ * It merges with the same two-queue algorithm and tie-breaking as makeTree did,
+ * and since integer sums are exact, equal weights always compare equal.
+ *
+ * Nodes 0..n-1 are the leaves, in the order their weights were given, and nodes
+ * n..2n-2 are the merged nodes in the order they were made. The root is the last node.
+ */
+public class HuffmanTree {
+    private final int leaves;
+    private final long[] weight;
+    private final int[] left;
+    private final int[] right;
+
+    /**
+     * Builds the tree for leaves with the given weights
+     *
+     * @param sortedWeights The weight of every leaf, in increasing order
+     */
+    public HuffmanTree(long[] sortedWeights) {
+        leaves = sortedWeights.length;
+        int size = Math.max(leaves, 2 * leaves - 1);
+        weight = new long[size];
+        left = new int[size];
+        right = new int[size];
+        System.arraycopy(sortedWeights, 0, weight, 0, leaves);
+        for (int i = 0; i < leaves; i++) left[i] = right[i] = -1;
+
+        // The leaves are the source queue, the merged nodes the target queue
+        int source = 0, target = leaves;
+        for (int next = leaves; next < size; next++) {
+            left[next] = (target == next || (source < leaves && weight[source] <= weight[target])) ? source++ : target++;
+            right[next] = (target == next || (source < leaves && weight[source] <= weight[target])) ? source++ : target++;
+            weight[next] = weight[left[next]] + weight[right[next]];
+        }
+    }
+
+    /**
+     * Returns the depth of every leaf, which is the length of its codeword
+     */
+    public int[] depths() {
+        int[] depth = new int[weight.length];
+        // Children are always made before their parents, so go from the root down
+        for (int node = weight.length - 1; node >= leaves; node--) {
+            depth[left[node]] = depth[node] + 1;
+            depth[right[node]] = depth[node] + 1;
+        }
+        int[] leafDepths = new int[leaves];
+        System.arraycopy(depth, 0, leafDepths, 0, leaves);
+        return leafDepths;
+    }
+
+    public int size() { return weight.length; }
+    public int getRoot() { return weight.length - 1; }
+    public boolean isLeaf(int node) { return node < leaves; }
+    public long getWeight(int node) { return weight[node]; }
+    public int getLeft(int node) { return left[node]; }
+    public int getRight(int node) { return right[node]; }
+}
@@ -0,0 +1,47 @@
+package huffman;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * This class memory maps a file one window at a time, so files of any size can be
+ * read through MappedByteBuffers without copying them onto the heap, and without
+ * mapping more of the address space than one window at once.
+ */
+public class MappedFile {
+    public static final long DEFAULT_WINDOW = 1L << 30; // 1 GB
+
+    private final FileChannel channel;
+    private final long end;
+    private final long windowSize;
+    private long position;
+
+    /**
+     * @param channel The file to map, open for reading
+     * @param start Where in the file to start
+     * @param windowSize The most bytes to map at once, at most Integer.MAX_VALUE
+     */
+    public MappedFile(FileChannel channel, long start, long windowSize) throws IOException {
+        if (windowSize <= 0 || windowSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Window size must be between 1 and " + Integer.MAX_VALUE);
+        }
+        this.channel = channel;
+        this.end = channel.size();
+        this.windowSize = windowSize;
+        this.position = start;
+    }
+
+    /**
+     * Maps the next window of the file
+     *
+     * @return The next window, or null when the whole file has been mapped
+     */
+    public ByteBuffer next() throws IOException {
+        if (position >= end) return null;
+        long size = Math.min(windowSize, end - position);
+        ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        position += size;
+        return window;
+    }
+}